@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.apache.sling.graphql.api.SchemaProvider;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.apache.sling.graphql.core.engine.DefaultQueryExecutor;
+import org.apache.sling.graphql.core.engine.SlingDataFetcherSelector;
+import org.apache.sling.graphql.core.engine.SlingTypeResolverSelector;
+import org.apache.sling.graphql.core.mocks.MockScriptServlet;
+import org.apache.sling.graphql.core.scalars.SlingScalarsProvider;
+import org.apache.sling.graphql.core.schema.RankedSchemaProviders;
+import org.apache.sling.testing.mock.osgi.context.OsgiContextImpl;
+import org.mockito.Mockito;
+
+/**
+ * Sets up a QueryExecutor with the same OSGi mocks as the unit tests, for use
+ * outside of JUnit in the JMH benchmarks.
+ */
+public class BenchmarkContext extends OsgiContextImpl {
+
+    private final Resource resource;
+
+    public BenchmarkContext(String schema, Map<String, Object> executorProperties) {
+        setUp();
+        final SchemaProvider schemaProvider = (r, selectors) -> schema;
+        registerService(SchemaProvider.class, schemaProvider);
+        resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn("/content/benchmark");
+        Mockito.when(resource.getResourceType()).thenReturn("benchmark/resource");
+
+        final ServletResolver servletResolver = Mockito.mock(ServletResolver.class);
+        Mockito.when(servletResolver.resolveServlet(Mockito.any(Resource.class), Mockito.any(String.class)))
+                .thenReturn(new MockScriptServlet());
+        bundleContext().registerService(ServletResolver.class, servletResolver, null);
+
+        registerInjectActivateService(new SlingDataFetcherSelector());
+        registerInjectActivateService(new SlingTypeResolverSelector());
+        registerInjectActivateService(new SlingScalarsProvider());
+        registerInjectActivateService(new RankedSchemaProviders());
+        registerInjectActivateService(new DefaultQueryExecutor(), executorProperties);
+    }
+
+    public void registerFetcher(String name, SlingDataFetcher<?> fetcher) {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(SlingDataFetcher.NAME_SERVICE_PROPERTY, name);
+        bundleContext().registerService(SlingDataFetcher.class, fetcher, props);
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public QueryExecutor getQueryExecutor() {
+        return getService(QueryExecutor.class);
+    }
+
+    public void close() {
+        tearDown();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates schemas, queries and data of configurable sizes for the benchmarks.
+ *
+ * The schema has types T0..Tn, each of which points to one of the first
+ * {@link #CYCLE} types both through a plain field and through a field served
+ * by a SlingDataFetcher. Keeping the references within a short cycle makes
+ * the schema wide rather than deep, like real schemas are.
+ */
+final class BenchmarkSchemas {
+
+    static final String TREE_FETCHER = "bench/tree";
+    static final String ITEMS_FETCHER = "bench/items";
+    static final String DETAILS_FETCHER = "bench/details";
+
+    static final int CYCLE = 10;
+
+    private BenchmarkSchemas() {}
+
+    static String schema(int types) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("type Query {\n");
+        sb.append("  root: T0 @fetcher(name:\"").append(TREE_FETCHER).append("\")\n");
+        sb.append("  items: [T0] @fetcher(name:\"").append(ITEMS_FETCHER).append("\")\n");
+        sb.append("}\n");
+        for (int i = 0; i < types; i++) {
+            final String next = "T" + ((i + 1) % Math.min(types, CYCLE));
+            sb.append("type T").append(i).append(" {\n");
+            sb.append("  id: String\n");
+            sb.append("  name: String\n");
+            sb.append("  count: Int\n");
+            sb.append("  next: ").append(next).append('\n');
+            sb.append("  details: ")
+                    .append(next)
+                    .append(" @fetcher(name:\"")
+                    .append(DETAILS_FETCHER)
+                    .append("\")\n");
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+
+    /** @return a query selecting the id and name of each level of the tree, down to depth */
+    static String treeQuery(int depth) {
+        final StringBuilder sb = new StringBuilder("{ root ");
+        for (int i = 0; i < depth; i++) {
+            sb.append("{ id name count next ");
+        }
+        sb.append("{ id }");
+        for (int i = 0; i < depth; i++) {
+            sb.append(" }");
+        }
+        return sb.append(" }").toString();
+    }
+
+    /** @return a query which calls the details fetcher for each item */
+    static String itemsQuery() {
+        return "{ items { id name details { id name count next { id name count next { id } } } } }";
+    }
+
+    static Map<String, Object> node(String id, int depth) {
+        final Map<String, Object> node = new HashMap<>();
+        node.put("id", id);
+        node.put("name", "Node " + id);
+        node.put("count", depth);
+        if (depth > 0) {
+            node.put("next", node(id + "." + depth, depth - 1));
+        }
+        return node;
+    }
+
+    static List<Map<String, Object>> nodes(int count, int depth) {
+        final List<Map<String, Object>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(node(String.valueOf(i), depth));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected by the usual JMH command line once for each
+ * number of threads in the benchmark.threads system property, 1 to 64 by
+ * default, so that the contention benchmarks can be compared across core counts.
+ */
+public class ContentionBenchmarkRunner {
+
+    private ContentionBenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (String threads :
+                System.getProperty("benchmark.threads", "1,2,4,8,16,32,64").split(",")) {
+            new Runner(new OptionsBuilder()
+                            .parent(commandLine)
+                            .threads(Integer.parseInt(threads.trim()))
+                            .build())
+                    .run();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.sling.graphql.api.pagination.Connection;
+import org.apache.sling.graphql.api.pagination.Cursor;
+import org.apache.sling.graphql.api.pagination.Edge;
+import org.apache.sling.graphql.helpers.GenericConnection;
+import org.apache.sling.graphql.helpers.SeekableDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Pages through a GenericConnection at increasing depths, by scanning the
+ * data iterator and by seeking in a SeekableDataSource.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericConnectionBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int depth;
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private final Function<String, String> cursorStringProvider = Function.identity();
+    private List<String> data;
+    private SeekableDataSource<String> dataSource;
+    private Cursor startAfter;
+
+    @Setup
+    public void setup() {
+        data = new ArrayList<>(depth + pageSize);
+        for (int i = 0; i < depth + pageSize; i++) {
+            data.add(String.format("item-%09d", i));
+        }
+        dataSource = SeekableDataSource.fromSortedList(data, cursorStringProvider);
+        startAfter = new Cursor(data.get(depth - 1));
+    }
+
+    @Benchmark
+    public void scan(Blackhole bh) {
+        consume(
+                new GenericConnection.Builder<>(data.iterator(), cursorStringProvider)
+                        .withStartAfter(startAfter)
+                        .withLimit(pageSize)
+                        .build(),
+                bh);
+    }
+
+    @Benchmark
+    public void seek(Blackhole bh) {
+        consume(
+                GenericConnection.Builder.fromDataSource(dataSource, cursorStringProvider)
+                        .withStartAfter(startAfter)
+                        .withLimit(pageSize)
+                        .build(),
+                bh);
+    }
+
+    private static void consume(Connection<String> connection, Blackhole bh) {
+        for (Edge<String> edge : connection.getEdges()) {
+            bh.consume(edge.getCursor().getEncoded());
+            bh.consume(edge.getNode());
+        }
+        bh.consume(connection.getPageInfo().isHasNextPage());
+    }
+}
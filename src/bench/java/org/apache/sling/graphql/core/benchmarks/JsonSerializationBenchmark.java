@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.json.Json;
+import jakarta.json.JsonWriter;
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializes an execution result to JSON the way GraphQLServlet does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private Map<String, Object> executionResult;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final BenchmarkContext context = new BenchmarkContext(BenchmarkSchemas.schema(10), null);
+        try {
+            context.registerFetcher(
+                    BenchmarkSchemas.ITEMS_FETCHER, new EchoDataFetcher(BenchmarkSchemas.nodes(items, 4)));
+            executionResult = context.getQueryExecutor()
+                    .execute(
+                            "{ items { id name count next { id name count next { id name count next { id } } } } }",
+                            Collections.emptyMap(),
+                            context.getResource(),
+                            new String[0]);
+        } finally {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public String serialize() {
+        final StringWriter w = new StringWriter();
+        try (JsonWriter writer = Json.createWriter(w)) {
+            writer.write(Json.createObjectBuilder(executionResult).build().asJsonObject());
+        }
+        return w.toString();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Distributions of the keys requested from the caches in the contention
+ * benchmarks. Key 0 is the most popular one with the Zipfian distribution.
+ */
+public enum KeyDistribution {
+    UNIFORM,
+    ZIPFIAN;
+
+    /** The exponent used by YCSB for its Zipfian workloads */
+    static final double ZIPFIAN_EXPONENT = 0.99;
+
+    public Sampler sampler(int keys) {
+        if (this == UNIFORM) {
+            return new Sampler(keys, null);
+        }
+        final double[] cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPFIAN_EXPONENT);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+        return new Sampler(keys, cdf);
+    }
+
+    /** Draws keys without allocating, the cumulative distribution is shared between threads */
+    public static final class Sampler {
+        private final int keys;
+        private final double[] cdf;
+
+        private Sampler(int keys, double[] cdf) {
+            this.keys = keys;
+            this.cdf = cdf;
+        }
+
+        public int next(SplittableRandom random) {
+            if (cdf == null) {
+                return random.nextInt(keys);
+            }
+            final int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i >= 0 ? i : -i - 1, keys - 1);
+        }
+    }
+}
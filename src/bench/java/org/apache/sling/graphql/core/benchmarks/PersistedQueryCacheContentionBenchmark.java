@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.cache.GraphQLCacheProvider;
+import org.apache.sling.graphql.core.cache.SimpleGraphQLCacheProvider;
+import org.apache.sling.testing.mock.osgi.context.OsgiContextImpl;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Persisted query lookups from concurrent threads against the
+ * SimpleGraphQLCacheProvider, run with ContentionBenchmarkRunner to vary the
+ * number of threads.
+ *
+ * Half of the capacity is preloaded. Each operation requests a query, which is
+ * one of the preloaded queries with the hitRatio probability and a query which
+ * was never seen otherwise. Like clients do, a query that is not found is then
+ * persisted, so misses take the write lock and, as the cache evicts in
+ * insertion order, eventually evict preloaded queries: the hits and misses
+ * counters report the actual ratio. The queries which were never seen are generated up
+ * front by each thread, so that producing them doesn't add contention, and are
+ * reused once they must have been evicted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistedQueryCacheContentionBenchmark {
+
+    private static final String RESOURCE_TYPE = "benchmark/resource";
+    private static final int UNSEEN_QUERIES = 4096;
+
+    @Param({"1000"})
+    public int capacity;
+
+    @Param({"1.0", "0.9", "0.5"})
+    public double hitRatio;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private ProviderContext context;
+    private GraphQLCacheProvider provider;
+    private KeyDistribution.Sampler sampler;
+    private String[] queries;
+    private String[] hashes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new ProviderContext();
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider(), "cacheSize", capacity);
+        provider = context.getService(GraphQLCacheProvider.class);
+        // leave room in the cache for the misses, to limit the evictions of preloaded queries
+        final int keys = Math.max(1, capacity / 2);
+        sampler = distribution.sampler(keys);
+        queries = new String[keys];
+        hashes = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            queries[i] = "{ query" + i + " { id name } }";
+            hashes[i] = provider.cacheQuery(queries[i], RESOURCE_TYPE, null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+        String[] unseenQueries;
+        String[] unseenHashes;
+        int nextUnseen;
+
+        @Setup(Level.Trial)
+        public void setup(ThreadParams params, PersistedQueryCacheContentionBenchmark benchmark) {
+            final int count = Math.max(UNSEEN_QUERIES, 4 * benchmark.capacity);
+            unseenQueries = new String[count];
+            unseenHashes = new String[count];
+            for (int i = 0; i < count; i++) {
+                unseenQueries[i] = "{ unseen" + params.getThreadIndex() + "_" + i + " { id } }";
+                unseenHashes[i] = Long.toHexString(random.nextLong());
+            }
+        }
+
+        int nextUnseen() {
+            final int i = nextUnseen;
+            nextUnseen = i + 1 < unseenQueries.length ? i + 1 : 0;
+            return i;
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Benchmark
+    public String lookup(ThreadState thread, Counters counters) {
+        final String query;
+        final String hash;
+        if (thread.random.nextDouble() < hitRatio) {
+            final int i = sampler.next(thread.random);
+            query = queries[i];
+            hash = hashes[i];
+        } else {
+            final int i = thread.nextUnseen();
+            query = thread.unseenQueries[i];
+            hash = thread.unseenHashes[i];
+        }
+        final String cached = provider.getQuery(hash, RESOURCE_TYPE, null);
+        if (cached != null) {
+            counters.hits++;
+            return cached;
+        }
+        counters.misses++;
+        return provider.cacheQuery(query, RESOURCE_TYPE, null);
+    }
+
+    private static class ProviderContext extends OsgiContextImpl {
+        ProviderContext() {
+            setUp();
+            final MetricsService metricsService = Mockito.mock(MetricsService.class);
+            Mockito.when(metricsService.counter(Mockito.anyString())).thenReturn(Mockito.mock(Counter.class));
+            registerService(MetricsService.class, metricsService);
+            registerService(MetricRegistry.class, new MetricRegistry(), "name", "sling");
+        }
+
+        void close() {
+            tearDown();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end QueryExecutor.execute() benchmark, at several schema sizes and
+ * with the schema cache enabled (warm) or disabled (cold).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryExecutionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int schemaTypes;
+
+    @Param({"true", "false"})
+    public boolean schemaCache;
+
+    private BenchmarkContext context;
+    private String query;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new BenchmarkContext(
+                BenchmarkSchemas.schema(schemaTypes),
+                Collections.singletonMap("schemaCacheSize", schemaCache ? 128 : 0));
+        context.registerFetcher(BenchmarkSchemas.TREE_FETCHER, new EchoDataFetcher(BenchmarkSchemas.node("root", 8)));
+        query = BenchmarkSchemas.treeQuery(8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> execute() {
+        return context.getQueryExecutor().execute(query, Collections.emptyMap(), context.getResource(), new String[0]);
+    }
+}
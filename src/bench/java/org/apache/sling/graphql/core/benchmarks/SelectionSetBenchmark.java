@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.graphql.api.SelectedField;
+import org.apache.sling.graphql.api.SelectionSet;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Executes a list query where a SlingDataFetcher inspects its selection set
+ * for every item, as fetchers which optimize their queries do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionSetBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private BenchmarkContext context;
+    private String query;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new BenchmarkContext(BenchmarkSchemas.schema(10), null);
+        context.registerFetcher(BenchmarkSchemas.ITEMS_FETCHER, new EchoDataFetcher(BenchmarkSchemas.nodes(items, 0)));
+        final Map<String, Object> details = BenchmarkSchemas.node("details", 3);
+        final SlingDataFetcher<Object> detailsFetcher = e -> {
+            final SelectionSet selectionSet = e.getSelectionSet();
+            int selected = selectionSet.getLeafPaths().size();
+            for (SelectedField field : selectionSet.getFields()) {
+                selected += field.getSubSelectedFields().size();
+            }
+            return selected > 0 ? details : null;
+        };
+        context.registerFetcher(BenchmarkSchemas.DETAILS_FETCHER, detailsFetcher);
+        query = BenchmarkSchemas.itemsQuery();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> execute() {
+        return context.getQueryExecutor().execute(query, Collections.emptyMap(), context.getResource(), new String[0]);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.graphql.core.benchmarks.BenchmarkContext;
+import org.apache.sling.graphql.core.benchmarks.KeyDistribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Schema cache lookups from concurrent threads, through
+ * DefaultQueryExecutor.getTypeDefinitionRegistry(). Run with
+ * ContentionBenchmarkRunner to vary the number of threads.
+ *
+ * The cached schemas are keyed by resource path, each operation uses one of
+ * the preloaded paths with the hitRatio probability and a path which was never
+ * seen otherwise, which parses the schema under the write lock. The unseen
+ * paths are generated up front by each thread, so that producing them doesn't
+ * add contention, and are reused once they must have been evicted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaCacheContentionBenchmark {
+
+    private static final String SCHEMA = "type Query { hello: String @fetcher(name:\"bench/hello\") }\n"
+            + "type Item { id: String name: String count: Int }\n";
+    private static final String[] NO_SELECTORS = new String[0];
+    private static final int UNSEEN_RESOURCES = 4096;
+
+    @Param({"128"})
+    public int capacity;
+
+    @Param({"1.0", "0.9", "0.5"})
+    public double hitRatio;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private BenchmarkContext context;
+    private DefaultQueryExecutor executor;
+    private KeyDistribution.Sampler sampler;
+    private Resource[] resources;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new BenchmarkContext(SCHEMA, Collections.singletonMap("schemaCacheSize", capacity));
+        executor = (DefaultQueryExecutor) context.getQueryExecutor();
+        // leave room in the LRU caches for the misses, to limit the evictions of preloaded schemas
+        final int keys = Math.max(1, capacity / 2);
+        sampler = distribution.sampler(keys);
+        resources = new Resource[keys];
+        for (int i = 0; i < keys; i++) {
+            resources[i] = new SyntheticResource(null, "/content/cached/" + i, "benchmark/resource");
+            executor.getTypeDefinitionRegistry(SCHEMA, resources[i], NO_SELECTORS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+        Resource[] unseen;
+        int nextUnseen;
+
+        @Setup(Level.Trial)
+        public void setup(ThreadParams params, SchemaCacheContentionBenchmark benchmark) {
+            unseen = new Resource[Math.max(UNSEEN_RESOURCES, 4 * benchmark.capacity)];
+            for (int i = 0; i < unseen.length; i++) {
+                unseen[i] = new SyntheticResource(
+                        null, "/content/unseen/" + params.getThreadIndex() + "/" + i, "benchmark/resource");
+            }
+        }
+
+        Resource nextUnseen() {
+            final Resource resource = unseen[nextUnseen];
+            nextUnseen = nextUnseen + 1 < unseen.length ? nextUnseen + 1 : 0;
+            return resource;
+        }
+    }
+
+    @Benchmark
+    public TypeDefinitionRegistry lookup(ThreadState thread) {
+        final Resource resource;
+        if (thread.random.nextDouble() < hitRatio) {
+            resource = resources[sampler.next(thread.random)];
+        } else {
+            resource = thread.nextUnseen();
+        }
+        return executor.getTypeDefinitionRegistry(SCHEMA, resource, NO_SELECTORS);
+    }
+}
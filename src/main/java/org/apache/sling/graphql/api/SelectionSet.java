@@ -19,6 +19,7 @@
 package org.apache.sling.graphql.api;
 
 import java.util.List;
+import java.util.Set;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -82,4 +83,24 @@ public interface SelectionSet {
      */
     @Nullable
     SelectedField get(String qualifiedName);
+
+    /**
+     * Returns the qualified names of the selected leaf fields, the ones without sub-selections, like "field1",
+     * "field2/field3" or "field5/field7/field8" in the above example. This is computed once per selection set, and
+     * allows data fetchers to only read the data that's requested.
+     *
+     * @return the qualified names of the selected leaf fields
+     */
+    @NotNull
+    Set<String> getLeafPaths();
+
+    /**
+     * Returns the qualified names of the selected leaf fields which apply to objects of the supplied type, when
+     * the selection is made on an interface or union type.
+     *
+     * @param objectTypeName the name of the object type
+     * @return the qualified names of the selected leaf fields for that type
+     */
+    @NotNull
+    Set<String> getLeafPaths(@NotNull String objectTypeName);
 }
@@ -66,4 +66,15 @@ public interface SlingDataFetcherEnvironment {
 
     /** @return the selectionSet, mandatory in a graphql query */
     SelectionSet getSelectionSet();
+
+    /**
+     * Long running fetchers should check this regularly and return early, with
+     * whatever partial data they have, once the query is cancelled.
+     *
+     * @return {@code true} if the execution of the query has been cancelled, for
+     * example because its deadline has passed
+     */
+    default boolean isCancelled() {
+        return false;
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.api.engine;
+
+import java.util.function.BooleanSupplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Options which apply to a single execution of a {@link QueryExecutor}, in addition to the query and its variables.
+ * Instances are immutable and created with a {@link Builder}.
+ */
+@ProviderType
+public final class ExecutionOptions {
+
+    /** The options used when none are specified */
+    public static final ExecutionOptions DEFAULT = Builder.newBuilder().build();
+
+    private final boolean trace;
+
+    private final long timeout;
+
+    private final BooleanSupplier cancellation;
+
+    private final BooleanSupplier overload;
+
+    private ExecutionOptions(Builder builder) {
+        this.trace = builder.trace;
+        this.timeout = builder.timeout;
+        this.cancellation = builder.cancellation;
+        this.overload = builder.overload;
+    }
+
+    /**
+     * @return {@code true} if a timing trace of the execution is added to the {@code extensions} of the result
+     */
+    public boolean isTrace() {
+        return trace;
+    }
+
+    /**
+     * @return the requested timeout of the execution in milliseconds, 0 if none is requested. The executor
+     * can apply a shorter timeout than the requested one.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the signal which tells the executor that the execution has been cancelled by its caller, or
+     * {@code null} if it can't be cancelled
+     */
+    public @Nullable BooleanSupplier getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * @return the signal which tells the executor that its caller is overloaded, or {@code null} if the caller doesn't
+     * report its load
+     */
+    public @Nullable BooleanSupplier getOverload() {
+        return overload;
+    }
+
+    public static final class Builder {
+
+        private boolean trace;
+
+        private long timeout;
+
+        private BooleanSupplier cancellation;
+
+        private BooleanSupplier overload;
+
+        private Builder() {}
+
+        /**
+         * @return a builder with the default options
+         */
+        public static @NotNull Builder newBuilder() {
+            return new Builder();
+        }
+
+        /**
+         * @param trace {@code true} to add a timing trace of the execution to the {@code extensions} of the result
+         * @return this builder
+         */
+        public @NotNull Builder withTrace(boolean trace) {
+            this.trace = trace;
+            return this;
+        }
+
+        /**
+         * @param timeout the timeout of the execution in milliseconds, 0 for none. Once it has passed, no further
+         * data fetchers are called and the result contains the data fetched so far along with a timeout error.
+         * @return this builder
+         */
+        public @NotNull Builder withTimeout(long timeout) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("The timeout cannot be negative: " + timeout);
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * @param cancellation supplies {@code true} once the caller isn't interested in the result anymore, for
+         * example because the HTTP client has disconnected. It's checked before each data fetcher is called, so it
+         * must be cheap and thread-safe. Once cancelled, no further data fetchers are called.
+         * @return this builder
+         */
+        public @NotNull Builder withCancellation(@Nullable BooleanSupplier cancellation) {
+            this.cancellation = cancellation;
+            return this;
+        }
+
+        /**
+         * @param overload supplies {@code true} while the caller is overloaded, for example because requests are
+         * waiting for a concurrency limit. It's checked when the execution starts, and if it's overloaded the fields
+         * which are marked as degradable in the schema are not fetched.
+         * @return this builder
+         */
+        public @NotNull Builder withOverload(@Nullable BooleanSupplier overload) {
+            this.overload = overload;
+            return this;
+        }
+
+        public @NotNull ExecutionOptions build() {
+            return new ExecutionOptions(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.api.engine;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The {@code IncrementalResult} interface defines the result returned by
+ * {@link QueryExecutor#executeIncrementally(String, Map, org.apache.sling.api.resource.Resource, String[])}. It splits the
+ * response of a query that uses the {@code @defer} directive into an initial payload, which can be sent to the client
+ * immediately, and a sequence of subsequent payloads which are delivered as the deferred fragments resolve. The
+ * execution of the query only ends when the subsequent payloads were consumed or the result was closed, so a result
+ * whose subsequent payloads aren't consumed must be closed.
+ */
+@ProviderType
+public interface IncrementalResult extends AutoCloseable {
+
+    /**
+     * Returns the initial payload of the query's result, in the format defined by the GraphQL specification. When
+     * {@link #hasNext()} returns {@code true} the payload contains a {@code hasNext} entry set to {@code true}.
+     *
+     * @return the initial payload
+     */
+    @NotNull
+    Map<String, Object> getInitialPayload();
+
+    /**
+     * Provides a simple way to check if subsequent payloads will follow the initial one.
+     *
+     * @return {@code true} if subsequent payloads will follow the initial one, {@code false} otherwise
+     */
+    boolean hasNext();
+
+    /**
+     * Passes each subsequent payload to the {@code consumer}, in the order in which the deferred fragments resolve. This
+     * method blocks until the last payload, the one with {@code hasNext} set to {@code false}, was consumed, and can be
+     * called only once.
+     *
+     * @param consumer the consumer of the subsequent payloads; if it throws an exception the delivery of the remaining
+     *                 payloads is cancelled and the exception is rethrown
+     */
+    void forEachSubsequentPayload(@NotNull Consumer<Map<String, Object>> consumer);
+
+    /**
+     * Ends the execution of the query, without delivering the subsequent payloads which were not consumed yet. Calling
+     * this method after {@link #forEachSubsequentPayload(Consumer)} returned, or more than once, has no effect.
+     */
+    @Override
+    default void close() {
+        // nothing to release by default
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.sling.graphql.api.engine;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.graphql.api.SlingGraphQLException;
@@ -62,4 +63,86 @@ public interface QueryExecutor {
             @NotNull Map<String, Object> variables,
             @NotNull Resource queryResource,
             @NotNull String[] selectors);
+
+    /**
+     * Executes the passed {@code query} with the passed {@code options}. Implementations which don't support some of the
+     * options ignore them, this default implementation ignores all of them.
+     *
+     * @param query         the query
+     * @param variables     the query's variables; can be an empty {@link Map} if the query doesn't accept variables
+     * @param queryResource the current resource, used as the root for the query
+     * @param selectors     potential selectors used to select the schema applicable to the passed {@code query}
+     * @param options       the options of this execution
+     * @return a {@link Map} representing the query's result
+     * @throws SlingGraphQLException if the execution of the query leads to any issues
+     */
+    @NotNull
+    default Map<String, Object> execute(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors,
+            @NotNull ExecutionOptions options) {
+        return execute(query, variables, queryResource, selectors);
+    }
+
+    /**
+     * Executes the passed {@code query}, delivering the fragments marked with the {@code @defer} directive incrementally,
+     * after the initial payload. Implementations which don't support incremental delivery return the complete result as the
+     * initial payload, which is what this default implementation does.
+     *
+     * @param query         the query
+     * @param variables     the query's variables; can be an empty {@link Map} if the query doesn't accept variables
+     * @param queryResource the current resource, used as the root for the query
+     * @param selectors     potential selectors used to select the schema applicable to the passed {@code query}
+     * @return an {@link IncrementalResult} providing the initial and subsequent payloads of the query's result
+     * @throws SlingGraphQLException if the execution of the query leads to any issues
+     */
+    @NotNull
+    default IncrementalResult executeIncrementally(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors) {
+        final Map<String, Object> result = execute(query, variables, queryResource, selectors);
+        return new IncrementalResult() {
+            @Override
+            public @NotNull Map<String, Object> getInitialPayload() {
+                return result;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public void forEachSubsequentPayload(@NotNull Consumer<Map<String, Object>> consumer) {
+                // the complete result is part of the initial payload
+            }
+        };
+    }
+
+    /**
+     * Executes the passed {@code query} incrementally like
+     * {@link #executeIncrementally(String, Map, Resource, String[])}, with the passed {@code options}. Implementations which
+     * don't support some of the options ignore them, this default implementation ignores all of them.
+     *
+     * @param query         the query
+     * @param variables     the query's variables; can be an empty {@link Map} if the query doesn't accept variables
+     * @param queryResource the current resource, used as the root for the query
+     * @param selectors     potential selectors used to select the schema applicable to the passed {@code query}
+     * @param options       the options of this execution
+     * @return an {@link IncrementalResult} providing the initial and subsequent payloads of the query's result
+     * @throws SlingGraphQLException if the execution of the query leads to any issues
+     */
+    @NotNull
+    default IncrementalResult executeIncrementally(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors,
+            @NotNull ExecutionOptions options) {
+        return executeIncrementally(query, variables, queryResource, selectors);
+    }
 }
@@ -21,7 +21,7 @@
  * This package contains APIs which are independent of
  * a specific implementation of the underlying graphQL engine.
  */
-@Version("3.5.0")
+@Version("3.7.0")
 package org.apache.sling.graphql.api;
 
 import org.osgi.annotation.versioning.Version;
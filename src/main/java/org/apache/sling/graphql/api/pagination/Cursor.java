@@ -18,8 +18,8 @@
  */
 package org.apache.sling.graphql.api.pagination;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.Objects;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.graphql.api.SlingGraphQLException;
@@ -30,12 +30,15 @@ import org.osgi.annotation.versioning.ProviderType;
 /**
  * This class provides a Base64-encoded cursor which is used for paginated results, according to the specification from
  * <a href="https://relay.dev/graphql/connections.htm#sec-Cursor">https://relay.dev/graphql/connections.htm#sec-Cursor</a>.
+ * The raw value is encoded as UTF-8, and the encoded value is only computed when it's first needed.
  */
 @ProviderType
 public class Cursor {
 
     private final String rawValue;
-    private final String encoded;
+
+    /** Computed lazily - concurrent computations yield equal values, as for {@link String#hashCode()} */
+    private String encoded;
 
     /**
      * Creates a cursor from a {@link String}. The passed {@code rawValue} should not be {@code null}, nor an empty {@link String}.
@@ -47,7 +50,11 @@ public class Cursor {
             throw new SlingGraphQLException("Cannot create a cursor from an empty string.");
         }
         this.rawValue = rawValue;
-        this.encoded = encode(this.rawValue);
+    }
+
+    private Cursor(@NotNull String rawValue, @Nullable String encoded) {
+        this(rawValue);
+        this.encoded = encoded;
     }
 
     @Override
@@ -59,12 +66,13 @@ public class Cursor {
             return false;
         }
         final Cursor other = (Cursor) obj;
-        return Objects.equals(rawValue, other.rawValue) && Objects.equals(encoded, other.encoded);
+        // the encoded value is derived from the raw value
+        return rawValue.equals(other.rawValue);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(rawValue, encoded);
+        return rawValue.hashCode();
     }
 
     /**
@@ -78,26 +86,48 @@ public class Cursor {
         if (encoded == null) {
             return null;
         }
-        encoded = encoded.trim();
-        if (encoded.length() == 0) {
+        // find the trimmed bounds instead of creating a trimmed copy of the string
+        int start = 0;
+        int end = encoded.length();
+        while (start < end && encoded.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && encoded.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
             return null;
         }
-        return new Cursor(decode(encoded));
+        final boolean untrimmed = start == 0 && end == encoded.length();
+        return new Cursor(decode(encoded, start, end), untrimmed ? encoded : null);
     }
 
     @NotNull
     static String encode(String rawValue) {
-        return Base64.getEncoder().encodeToString(rawValue.getBytes());
+        return Base64.getEncoder().encodeToString(rawValue.getBytes(StandardCharsets.UTF_8));
     }
 
     @NotNull
     static String decode(String encodedValue) {
-        return new String(Base64.getDecoder().decode(encodedValue));
+        return decode(encodedValue, 0, encodedValue.length());
+    }
+
+    @NotNull
+    private static String decode(String encodedValue, int start, int end) {
+        final byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            final char c = encodedValue.charAt(i);
+            if (c > 0x7f) {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(c, 16));
+            }
+            bytes[i - start] = (byte) c;
+        }
+        return new String(Base64.getDecoder().decode(bytes), StandardCharsets.UTF_8);
     }
 
     @Override
     public String toString() {
-        return encoded;
+        return getEncoded();
     }
 
     @NotNull
@@ -107,6 +137,11 @@ public class Cursor {
 
     @NotNull
     public String getEncoded() {
-        return encoded;
+        String result = encoded;
+        if (result == null) {
+            result = encode(rawValue);
+            encoded = result;
+        }
+        return result;
     }
 }
@@ -21,7 +21,7 @@
  * This package contains APIs which are independent of
  * a specific implementation of the underlying graphQL engine.
  */
-@Version("0.0.1")
+@Version("0.0.2")
 package org.apache.sling.graphql.api.pagination;
 
 import org.osgi.annotation.versioning.Version;
@@ -18,11 +18,15 @@
  */
 package org.apache.sling.graphql.core.directives;
 
+import java.math.BigInteger;
+
 import graphql.introspection.Introspection;
+import graphql.language.BooleanValue;
 import graphql.language.Description;
 import graphql.language.DirectiveDefinition;
 import graphql.language.DirectiveLocation;
 import graphql.language.InputValueDefinition;
+import graphql.language.IntValue;
 import graphql.language.NonNullType;
 import graphql.language.StringValue;
 import graphql.language.TypeName;
@@ -32,6 +36,8 @@ public class Directives {
     private Directives() {}
 
     public static final String TYPE_STRING = "String";
+    public static final String TYPE_BOOLEAN = "Boolean";
+    public static final String TYPE_INT = "Int";
 
     public static final DirectiveDefinition CONNECTION = DirectiveDefinition.newDirectiveDefinition()
             .name("connection")
@@ -76,6 +82,18 @@ public class Directives {
                     .build())
             .build();
 
+    public static final DirectiveDefinition DEGRADABLE = DirectiveDefinition.newDirectiveDefinition()
+            .name("degradable")
+            .directiveLocation(DirectiveLocation.newDirectiveLocation()
+                    .name(Introspection.DirectiveLocation.FIELD_DEFINITION.name())
+                    .build())
+            .description(new Description(
+                    "Marks an optional field whose SlingDataFetcher is skipped when the server is overloaded, the field"
+                            + " being null with an error instead.",
+                    null,
+                    false))
+            .build();
+
     public static final DirectiveDefinition RESOLVER = DirectiveDefinition.newDirectiveDefinition()
             .name("resolver")
             .directiveLocation(DirectiveLocation.newDirectiveLocation()
@@ -105,5 +123,86 @@ public class Directives {
                     .type(TypeName.newTypeName(TYPE_STRING).build())
                     .defaultValue(new StringValue(""))
                     .build())
+            .inputValueDefinition(InputValueDefinition.newInputValueDefinition()
+                    .name("types")
+                    .description(new Description(
+                            "Comma-separated <class name or resource type>=<type name> mappings, resolved before"
+                                    + " calling the SlingTypeResolver.",
+                            null,
+                            false))
+                    .type(TypeName.newTypeName(TYPE_STRING).build())
+                    .defaultValue(new StringValue(""))
+                    .build())
+            .build();
+
+    public static final DirectiveDefinition DEFER = DirectiveDefinition.newDirectiveDefinition()
+            .name("defer")
+            .directiveLocation(DirectiveLocation.newDirectiveLocation()
+                    .name(Introspection.DirectiveLocation.FRAGMENT_SPREAD.name())
+                    .build())
+            .directiveLocation(DirectiveLocation.newDirectiveLocation()
+                    .name(Introspection.DirectiveLocation.INLINE_FRAGMENT.name())
+                    .build())
+            .description(new Description(
+                    "Delivers the fragment after the initial payload, if incremental delivery was requested.",
+                    null,
+                    false))
+            .inputValueDefinition(InputValueDefinition.newInputValueDefinition()
+                    .name("if")
+                    .description(new Description("Defers the fragment only if true.", null, false))
+                    .type(NonNullType.newNonNullType(
+                                    TypeName.newTypeName(TYPE_BOOLEAN).build())
+                            .build())
+                    .defaultValue(new BooleanValue(true))
+                    .build())
+            .inputValueDefinition(InputValueDefinition.newInputValueDefinition()
+                    .name("label")
+                    .description(new Description("Identifies the fragment in the subsequent payloads.", null, false))
+                    .type(TypeName.newTypeName(TYPE_STRING).build())
+                    .build())
+            .build();
+
+    public static final DirectiveDefinition STREAM = DirectiveDefinition.newDirectiveDefinition()
+            .name("stream")
+            .directiveLocation(DirectiveLocation.newDirectiveLocation()
+                    .name(Introspection.DirectiveLocation.FIELD.name())
+                    .build())
+            .description(new Description(
+                    "Allows the items of a list field to be delivered after the initial payload. The items are currently"
+                            + " part of the initial payload.",
+                    null,
+                    false))
+            .inputValueDefinition(InputValueDefinition.newInputValueDefinition()
+                    .name("if")
+                    .description(new Description("Streams the list only if true.", null, false))
+                    .type(NonNullType.newNonNullType(
+                                    TypeName.newTypeName(TYPE_BOOLEAN).build())
+                            .build())
+                    .defaultValue(new BooleanValue(true))
+                    .build())
+            .inputValueDefinition(InputValueDefinition.newInputValueDefinition()
+                    .name("label")
+                    .description(new Description("Identifies the list in the subsequent payloads.", null, false))
+                    .type(TypeName.newTypeName(TYPE_STRING).build())
+                    .build())
+            .inputValueDefinition(InputValueDefinition.newInputValueDefinition()
+                    .name("initialCount")
+                    .description(
+                            new Description("The number of list items to include in the initial payload.", null, false))
+                    .type(TypeName.newTypeName(TYPE_INT).build())
+                    .defaultValue(new IntValue(BigInteger.ZERO))
+                    .build())
+            .build();
+
+    public static final DirectiveDefinition LIVE = DirectiveDefinition.newDirectiveDefinition()
+            .name("live")
+            .directiveLocation(DirectiveLocation.newDirectiveLocation()
+                    .name(Introspection.DirectiveLocation.QUERY.name())
+                    .build())
+            .description(new Description(
+                    "Marks a query as live: when requested as text/event-stream, its result is pushed again whenever"
+                            + " the resources it depends on change.",
+                    null,
+                    false))
             .build();
 }
@@ -34,7 +34,7 @@ class DataFetchingEnvironmentWrapper implements SlingDataFetcherEnvironment {
     private final Resource currentResource;
     private final String options;
     private final String source;
-    private final SelectionSet selectionSet;
+    private SelectionSet selectionSet;
 
     DataFetchingEnvironmentWrapper(
             DataFetchingEnvironment env, Resource currentResource, String options, String source) {
@@ -42,7 +42,6 @@ class DataFetchingEnvironmentWrapper implements SlingDataFetcherEnvironment {
         this.currentResource = currentResource;
         this.options = options;
         this.source = source;
-        this.selectionSet = new SelectionSetWrapper(env.getSelectionSet());
     }
 
     @Override
@@ -82,6 +81,16 @@ class DataFetchingEnvironmentWrapper implements SlingDataFetcherEnvironment {
 
     @Override
     public SelectionSet getSelectionSet() {
+        // built on first use, as many fetchers don't need it
+        if (selectionSet == null) {
+            selectionSet = SelectionSetCache.getSelectionSet(env);
+        }
         return selectionSet;
     }
+
+    @Override
+    public boolean isCancelled() {
+        final QueryCancellation cancellation = QueryCancellation.of(env);
+        return cancellation != null && cancellation.isCancelled();
+    }
 }
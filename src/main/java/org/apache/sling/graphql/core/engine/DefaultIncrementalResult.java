@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import graphql.GraphQLError;
+import graphql.incremental.DelayedIncrementalPartialResult;
+import graphql.incremental.IncrementalExecutionResult;
+import graphql.incremental.IncrementalPayload;
+import org.apache.sling.graphql.api.SlingGraphQLException;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/** Adapts the graphql-java IncrementalExecutionResult to our IncrementalResult
+ *  interface. The subsequent payloads are requested one at a time, so that
+ *  the deferred fragments are only resolved as fast as the consumer writes
+ *  them out. The completion callback runs once the subsequent payloads were
+ *  consumed, or when the result is closed.
+ */
+class DefaultIncrementalResult implements IncrementalResult {
+
+    private final Map<String, Object> initialPayload;
+    private final Publisher<DelayedIncrementalPartialResult> publisher;
+    private final Consumer<List<GraphQLError>> errorHandler;
+    private final AtomicReference<Runnable> completion;
+    private boolean consumed;
+
+    private DefaultIncrementalResult(
+            @NotNull Map<String, Object> initialPayload,
+            @Nullable Publisher<DelayedIncrementalPartialResult> publisher,
+            @NotNull Consumer<List<GraphQLError>> errorHandler,
+            @Nullable Runnable completion) {
+        this.initialPayload = initialPayload;
+        this.publisher = publisher;
+        this.errorHandler = errorHandler;
+        this.completion = new AtomicReference<>(completion);
+    }
+
+    static IncrementalResult of(
+            @NotNull IncrementalExecutionResult result,
+            @NotNull Consumer<List<GraphQLError>> errorHandler,
+            @NotNull Runnable completion) {
+        return new DefaultIncrementalResult(
+                result.toSpecification(),
+                result.hasNext() ? result.getIncrementalItemPublisher() : null,
+                errorHandler,
+                completion);
+    }
+
+    static IncrementalResult completed(@NotNull Map<String, Object> result) {
+        return new DefaultIncrementalResult(result, null, errors -> {}, null);
+    }
+
+    @Override
+    public @NotNull Map<String, Object> getInitialPayload() {
+        return initialPayload;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return publisher != null;
+    }
+
+    @Override
+    public void forEachSubsequentPayload(@NotNull Consumer<Map<String, Object>> consumer) {
+        if (consumed) {
+            throw new IllegalStateException("The subsequent payloads have already been consumed");
+        }
+        consumed = true;
+        try {
+            deliver(consumer);
+        } finally {
+            complete();
+        }
+    }
+
+    @Override
+    public void close() {
+        consumed = true;
+        complete();
+    }
+
+    private void complete() {
+        final Runnable r = completion.getAndSet(null);
+        if (r != null) {
+            r.run();
+        }
+    }
+
+    private void deliver(@NotNull Consumer<Map<String, Object>> consumer) {
+        if (publisher == null) {
+            return;
+        }
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        publisher.subscribe(new Subscriber<DelayedIncrementalPartialResult>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(DelayedIncrementalPartialResult partialResult) {
+                try {
+                    if (partialResult.getIncremental() != null) {
+                        final List<GraphQLError> errors = new ArrayList<>();
+                        for (IncrementalPayload payload : partialResult.getIncremental()) {
+                            if (payload.getErrors() != null) {
+                                errors.addAll(payload.getErrors());
+                            }
+                        }
+                        if (!errors.isEmpty()) {
+                            errorHandler.accept(errors);
+                        }
+                    }
+                    consumer.accept(partialResult.toSpecification());
+                    subscription.request(1);
+                } catch (RuntimeException e) {
+                    subscription.cancel();
+                    done.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SlingGraphQLException("Interrupted while waiting for deferred payloads.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SlingGraphQLException("Unable to deliver deferred payloads.", e.getCause());
+        }
+    }
+}
@@ -20,12 +20,15 @@ package org.apache.sling.graphql.core.engine;
 
 import javax.script.ScriptException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -33,6 +36,7 @@ import java.util.function.Consumer;
 
 import graphql.ExecutionInput;
 import graphql.ExecutionResult;
+import graphql.ExperimentalApi;
 import graphql.GraphQL;
 import graphql.GraphQLContext;
 import graphql.GraphQLError;
@@ -40,6 +44,7 @@ import graphql.ParseAndValidate;
 import graphql.ParseAndValidateResult;
 import graphql.execution.values.InputInterceptor;
 import graphql.execution.values.legacycoercing.LegacyCoercingInputInterceptor;
+import graphql.incremental.IncrementalExecutionResult;
 import graphql.language.Argument;
 import graphql.language.Directive;
 import graphql.language.FieldDefinition;
@@ -62,11 +67,14 @@ import graphql.schema.idl.RuntimeWiring;
 import graphql.schema.idl.SchemaGenerator;
 import graphql.schema.idl.SchemaParser;
 import graphql.schema.idl.TypeDefinitionRegistry;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.graphql.api.SchemaProvider;
 import org.apache.sling.graphql.api.SlingDataFetcher;
 import org.apache.sling.graphql.api.SlingGraphQLException;
 import org.apache.sling.graphql.api.SlingTypeResolver;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
 import org.apache.sling.graphql.api.engine.QueryExecutor;
 import org.apache.sling.graphql.api.engine.ValidationResult;
 import org.apache.sling.graphql.core.directives.Directives;
@@ -79,6 +87,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
@@ -96,11 +105,13 @@ public class DefaultQueryExecutor implements QueryExecutor {
     public static final String FETCHER_NAME = "name";
     public static final String FETCHER_OPTIONS = "options";
     public static final String FETCHER_SOURCE = "source";
+    public static final String DEGRADABLE_DIRECTIVE = "degradable";
 
     public static final String RESOLVER_DIRECTIVE = "resolver";
     public static final String RESOLVER_NAME = "name";
     public static final String RESOLVER_OPTIONS = "options";
     public static final String RESOLVER_SOURCE = "source";
+    public static final String RESOLVER_TYPES = "types";
 
     public static final String CONNECTION_FOR = "for";
     public static final String CONNECTION_FETCHER = "fetcher";
@@ -121,6 +132,16 @@ public class DefaultQueryExecutor implements QueryExecutor {
 
     private int maxWhitespaceTokens;
 
+    private SlowQueryLog slowQueryLog;
+
+    private long queryTimeout;
+
+    private FieldDegradation.Thresholds degradationThresholds;
+
+    private final AtomicInteger executionsInFlight = new AtomicInteger();
+
+    private List<ParallelExecution> parallelExecutions = Collections.emptyList();
+
     @Reference
     private RankedSchemaProviders schemaProvider;
 
@@ -162,6 +183,92 @@ public class DefaultQueryExecutor implements QueryExecutor {
                         "The number of fields queried with an GraphQL request. This is a safety measure to avoid denial of service attacks."
                                 + " Change ONLY if you know exactly what you are doing.")
         int maxFieldCount() default 100000;
+
+        @AttributeDefinition(
+                name = "Slow Query Threshold",
+                description =
+                        "Queries which take longer than this (in milliseconds) are logged at WARN level, with a breakdown of"
+                                + " their execution time. 0 disables the slow query log.")
+        int slowQueryThreshold() default 0;
+
+        @AttributeDefinition(
+                name = "Slow Query Fetchers",
+                description = "The number of slowest data fetcher calls included in the slow query log lines.")
+        int slowQueryTopFetchers() default 5;
+
+        @AttributeDefinition(
+                name = "Query Timeout",
+                description =
+                        "The maximum execution time of a query in milliseconds. Once it has passed, no further data fetchers"
+                                + " are called and the data fetched so far is returned with a timeout error. Timeouts requested"
+                                + " for a single execution are capped by this value. 0 means no timeout.")
+        long queryTimeout() default 0;
+
+        @AttributeDefinition(
+                name = "Degradation CPU Load",
+                description =
+                        "The fields marked with the @degradable directive are not fetched by queries which start while the"
+                                + " system load average per processor is at least this percentage. 0 ignores the CPU load.")
+        int degradeCpuLoad() default 0;
+
+        @AttributeDefinition(
+                name = "Degradation Queries In Flight",
+                description =
+                        "The fields marked with the @degradable directive are not fetched by queries which start while at"
+                                + " least this number of queries is executing, including them. 0 ignores the number of"
+                                + " queries in flight.")
+        int degradeInFlight() default 0;
+
+        @AttributeDefinition(
+                name = "Parallelism",
+                description =
+                        "The number of threads which run the invocations of the parallel fetchers. 0 disables the parallel"
+                                + " execution.")
+        int parallelism() default 0;
+
+        @AttributeDefinition(
+                name = "Parallel Fetchers",
+                description =
+                        "The names of the SlingDataFetchers which run in parallel, like CPU-bound ones. They must be"
+                                + " thread-safe and not use the ResourceResolver, as other fetchers run at the same time.")
+        String[] parallelFetchers() default {};
+
+        @AttributeDefinition(
+                name = "Parallel Threshold",
+                description =
+                        "The number of invocations of the parallel fetchers which a query runs sequentially before running"
+                                + " the next ones in parallel, so that small queries don't pay for the hand-offs.")
+        int parallelThreshold() default 8;
+
+        @AttributeDefinition(
+                name = "Parallelism Per Query",
+                description =
+                        "The maximum number of fetcher invocations of a single query which run at the same time, including"
+                                + " the one on the request thread. Further ones run on the request thread.")
+        int parallelismPerQuery() default 4;
+
+        @AttributeDefinition(
+                name = "Virtual Thread Fetchers",
+                description =
+                        "The names of the SlingDataFetchers which block on I/O and run on virtual threads, so that"
+                                + " independent fields overlap their I/O. They must be thread-safe and not use the"
+                                + " ResourceResolver of the request, as other fetchers run at the same time. On JVMs without"
+                                + " virtual threads, they run on a bounded pool of platform threads instead.")
+        String[] virtualThreadFetchers() default {};
+
+        @AttributeDefinition(
+                name = "Virtual Threads Per Query",
+                description =
+                        "The maximum number of fetcher invocations of a single query which run on virtual threads at the"
+                                + " same time, including the one on the request thread. Further ones run on the request thread.")
+        int virtualThreadsPerQuery() default 16;
+
+        @AttributeDefinition(
+                name = "Virtual Threads Fallback",
+                description =
+                        "The maximum number of platform threads which run the virtual thread fetchers on JVMs without"
+                                + " virtual threads. When they are all busy, further invocations run on the request thread.")
+        int virtualThreadsFallback() default 20;
     }
 
     private class ExecutionContext {
@@ -174,6 +281,21 @@ public class DefaultQueryExecutor implements QueryExecutor {
                 @NotNull Resource queryResource,
                 @NotNull String[] selectors)
                 throws ScriptException {
+            this(query, variables, queryResource, selectors, false, null, null, null, null);
+        }
+
+        ExecutionContext(
+                @NotNull String query,
+                @NotNull Map<String, Object> variables,
+                @NotNull Resource queryResource,
+                @NotNull String[] selectors,
+                boolean incremental,
+                @Nullable TracingInstrumentation tracing,
+                @Nullable QueryCancellation cancellation,
+                @Nullable FieldDegradation degradation,
+                @Nullable ParallelExecution.HandOff handOff)
+                throws ScriptException {
+            final long schemaStart = System.nanoTime();
             final String schemaSdl = prepareSchemaDefinition(schemaProvider, queryResource, selectors);
             if (schemaSdl == null) {
                 throw new SlingGraphQLException(String.format(
@@ -182,22 +304,44 @@ public class DefaultQueryExecutor implements QueryExecutor {
             }
             LOGGER.debug("Resource {} maps to GQL schema {}", queryResource.getPath(), schemaSdl);
             final TypeDefinitionRegistry typeDefinitionRegistry =
-                    getTypeDefinitionRegistry(schemaSdl, queryResource, selectors);
+                    getTypeDefinitionRegistry(schemaSdl, queryResource, selectors, tracing);
             schema = buildSchema(typeDefinitionRegistry, queryResource);
+            if (tracing != null) {
+                tracing.schemaPrepared(schemaStart);
+            }
             input = ExecutionInput.newExecutionInput()
                     .query(query)
                     .variables(variables)
-                    .graphQLContext(getGraphQLContextBuilder())
+                    .graphQLContext(getGraphQLContextBuilder(incremental, cancellation, degradation, handOff))
                     .build();
         }
 
-        private Consumer<GraphQLContext.Builder> getGraphQLContextBuilder() {
+        private Consumer<GraphQLContext.Builder> getGraphQLContextBuilder(
+                boolean incremental,
+                @Nullable QueryCancellation cancellation,
+                @Nullable FieldDegradation degradation,
+                @Nullable ParallelExecution.HandOff handOff) {
             final ParserOptions parserOptions = ParserOptions.getDefaultParserOptions()
                     .transform(builder -> builder.maxTokens(maxQueryTokens)
                             .maxWhitespaceTokens(maxWhitespaceTokens)
                             .build());
-            return builder -> builder.put(ParserOptions.class, parserOptions)
-                    .put(InputInterceptor.class, LegacyCoercingInputInterceptor.migratesValues());
+            return builder -> {
+                builder.put(ParserOptions.class, parserOptions)
+                        .put(InputInterceptor.class, LegacyCoercingInputInterceptor.migratesValues())
+                        .put(ExperimentalApi.ENABLE_INCREMENTAL_SUPPORT, incremental)
+                        .put(SelectionSetCache.class, new SelectionSetCache());
+                if (cancellation != null) {
+                    builder.put(QueryCancellation.class, cancellation);
+                }
+                if (degradation != null) {
+                    builder.put(FieldDegradation.class, degradation);
+                }
+                if (handOff != null) {
+                    for (ParallelExecution parallelExecution : parallelExecutions) {
+                        builder.put(parallelExecution, parallelExecution.newQuery(handOff));
+                    }
+                }
+            };
         }
     }
 
@@ -214,6 +358,36 @@ public class DefaultQueryExecutor implements QueryExecutor {
         hashToSchemaMap = new LRUCache<>(schemaCacheSize);
         ExecutableNormalizedOperationFactory.Options.setDefaultOptions(
                 ExecutableNormalizedOperationFactory.Options.defaultOptions().maxFieldsCount(config.maxFieldCount()));
+        slowQueryLog = config.slowQueryThreshold() > 0
+                ? new SlowQueryLog(config.slowQueryThreshold(), config.slowQueryTopFetchers())
+                : null;
+        queryTimeout = Math.max(config.queryTimeout(), 0);
+        degradationThresholds = new FieldDegradation.Thresholds(config.degradeCpuLoad(), config.degradeInFlight());
+        final List<ParallelExecution> parallel = new ArrayList<>();
+        if (config.parallelism() > 0 && ArrayUtils.isNotEmpty(config.parallelFetchers())) {
+            parallel.add(ParallelExecution.onForkJoinPool(
+                    config.parallelism(),
+                    config.parallelFetchers(),
+                    config.parallelThreshold(),
+                    config.parallelismPerQuery()));
+        }
+        if (ArrayUtils.isNotEmpty(config.virtualThreadFetchers())) {
+            // handing a blocking invocation over to a virtual thread is cheap compared to its I/O
+            parallel.add(ParallelExecution.onVirtualThreads(
+                    config.virtualThreadsFallback(),
+                    config.virtualThreadFetchers(),
+                    0,
+                    config.virtualThreadsPerQuery()));
+        }
+        parallelExecutions = parallel;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (slowQueryLog != null) {
+            slowQueryLog.close();
+        }
+        parallelExecutions.forEach(ParallelExecution::close);
     }
 
     @Override
@@ -262,9 +436,86 @@ public class DefaultQueryExecutor implements QueryExecutor {
             @NotNull Map<String, Object> variables,
             @NotNull Resource queryResource,
             @NotNull String[] selectors) {
+        return execute(query, variables, queryResource, selectors, ExecutionOptions.DEFAULT);
+    }
+
+    @Override
+    public @NotNull Map<String, Object> execute(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors,
+            @NotNull ExecutionOptions options) {
         try {
-            final ExecutionContext ctx = new ExecutionContext(query, variables, queryResource, selectors);
-            final GraphQL graphQL = GraphQL.newGraphQL(ctx.schema).build();
+            return executeQuery(query, variables, queryResource, selectors, false, options)
+                    .getInitialPayload();
+        } catch (Exception e) {
+            return handleExecutionFailure(query, queryResource, selectors, e);
+        }
+    }
+
+    @Override
+    public @NotNull IncrementalResult executeIncrementally(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors) {
+        return executeIncrementally(query, variables, queryResource, selectors, ExecutionOptions.DEFAULT);
+    }
+
+    @Override
+    public @NotNull IncrementalResult executeIncrementally(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors,
+            @NotNull ExecutionOptions options) {
+        try {
+            return executeQuery(query, variables, queryResource, selectors, true, options);
+        } catch (Exception e) {
+            return DefaultIncrementalResult.completed(handleExecutionFailure(query, queryResource, selectors, e));
+        }
+    }
+
+    private IncrementalResult executeQuery(
+            @NotNull String query,
+            @NotNull Map<String, Object> variables,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors,
+            boolean incremental,
+            @NotNull ExecutionOptions options)
+            throws ScriptException {
+        final SlowQueryLog slowQueries = slowQueryLog;
+        final TracingInstrumentation tracing = options.isTrace() || slowQueries != null
+                ? new TracingInstrumentation(options.isTrace(), slowQueries != null ? slowQueries.getTopFetchers() : 0)
+                : null;
+        final QueryCancellation cancellation = QueryCancellation.create(
+                QueryCancellation.effectiveTimeout(queryTimeout, options.getTimeout()), options.getCancellation());
+        final int executions = executionsInFlight.incrementAndGet();
+        boolean deferred = false;
+        try {
+            final FieldDegradation degradation = degradationThresholds.evaluate(executions, options.getOverload());
+            if (degradation != null) {
+                LOGGER.debug("Degrading the query at {}: {}", queryResource.getPath(), degradation.getReason());
+            }
+            // the deferred fields of incremental executions are fetched after this method returns
+            final ParallelExecution.HandOff handOff =
+                    !parallelExecutions.isEmpty() && !incremental ? new ParallelExecution.HandOff(cancellation) : null;
+            final ExecutionContext ctx = new ExecutionContext(
+                    query,
+                    variables,
+                    queryResource,
+                    selectors,
+                    incremental,
+                    tracing,
+                    cancellation,
+                    degradation,
+                    handOff);
+            final GraphQL.Builder builder = GraphQL.newGraphQL(ctx.schema);
+            if (tracing != null) {
+                builder.instrumentation(tracing);
+            }
+            final GraphQL graphQL = builder.build();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(
                         "Executing query\n[{}]\nat [{}] with variables [{}]",
@@ -272,45 +523,91 @@ public class DefaultQueryExecutor implements QueryExecutor {
                         queryResource.getPath(),
                         cleanLog.sanitize(variables.toString()));
             }
-            final ExecutionResult result = graphQL.execute(ctx.input);
-            if (!result.getErrors().isEmpty()) {
-                StringBuilder errors = new StringBuilder();
-                for (GraphQLError error : result.getErrors()) {
-                    errors.append("Error: type=")
-                            .append(error.getErrorType().toString())
-                            .append("; message=")
-                            .append(error.getMessage())
-                            .append(System.lineSeparator());
-                    if (error.getLocations() != null) {
-                        for (SourceLocation location : error.getLocations()) {
-                            errors.append("location=")
-                                    .append(location.getLine())
-                                    .append(",")
-                                    .append(location.getColumn())
-                                    .append(";");
-                        }
-                    }
+            final ExecutionResult result =
+                    handOff == null ? graphQL.execute(ctx.input) : handOff.join(graphQL.executeAsync(ctx.input));
+            LOGGER.debug("ExecutionResult.isDataPresent={}", result.isDataPresent());
+            logErrors(result.getErrors(), query, queryResource, selectors);
+            if (result instanceof IncrementalExecutionResult && ((IncrementalExecutionResult) result).hasNext()) {
+                // the execution goes on until the deferred payloads were consumed, or the result closed
+                final IncrementalResult incrementalResult = DefaultIncrementalResult.of(
+                        (IncrementalExecutionResult) result,
+                        errors -> logErrors(errors, query, queryResource, selectors),
+                        () -> incrementalExecutionEnded(tracing, slowQueries, query, queryResource, selectors));
+                deferred = true;
+                return incrementalResult;
+            }
+            if (slowQueries != null) {
+                slowQueries.logIfSlow(tracing, query, queryResource, selectors);
+            }
+            return DefaultIncrementalResult.completed(result.toSpecification());
+        } finally {
+            if (!deferred) {
+                executionsInFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void incrementalExecutionEnded(
+            @Nullable TracingInstrumentation tracing,
+            @Nullable SlowQueryLog slowQueries,
+            @NotNull String query,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors) {
+        executionsInFlight.decrementAndGet();
+        if (slowQueries != null && tracing != null) {
+            tracing.incrementalExecutionEnded();
+            slowQueries.logIfSlow(tracing, query, queryResource, selectors);
+        }
+    }
+
+    private void logErrors(
+            @NotNull List<GraphQLError> graphQLErrors,
+            @NotNull String query,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors) {
+        if (!graphQLErrors.isEmpty()) {
+            StringBuilder errors = new StringBuilder();
+            for (GraphQLError error : graphQLErrors) {
+                if (error.getErrorType() == FetcherCircuitBreaker.Classification.CircuitOpen
+                        || error.getErrorType() == FieldDegradation.Classification.Degraded) {
+                    // logged once by the circuit breaker when it opens, or expected under load
+                    continue;
                 }
-                if (LOGGER.isErrorEnabled()) {
-                    LOGGER.error(
-                            "Query failed for Resource {}: query={} Errors:{}, selectors={}",
-                            queryResource.getPath(),
-                            cleanLog.sanitize(query),
-                            errors,
-                            Arrays.toString(selectors));
+                errors.append("Error: type=")
+                        .append(error.getErrorType().toString())
+                        .append("; message=")
+                        .append(error.getMessage())
+                        .append(System.lineSeparator());
+                if (error.getLocations() != null) {
+                    for (SourceLocation location : error.getLocations()) {
+                        errors.append("location=")
+                                .append(location.getLine())
+                                .append(",")
+                                .append(location.getColumn())
+                                .append(";");
+                    }
                 }
             }
-            LOGGER.debug("ExecutionResult.isDataPresent={}", result.isDataPresent());
-            return result.toSpecification();
-        } catch (Exception e) {
-            final String message = String.format(
-                    "Query failed for Resource %s: query=%s, selectors=%s",
-                    queryResource.getPath(), cleanLog.sanitize(query), Arrays.toString(selectors));
-            LOGGER.error(message, e);
-            return SlingGraphQLErrorHelper.toSpecification(message, e);
+            if (errors.length() > 0 && LOGGER.isErrorEnabled()) {
+                LOGGER.error(
+                        "Query failed for Resource {}: query={} Errors:{}, selectors={}",
+                        queryResource.getPath(),
+                        cleanLog.sanitize(query),
+                        errors,
+                        Arrays.toString(selectors));
+            }
         }
     }
 
+    private Map<String, Object> handleExecutionFailure(
+            @NotNull String query, @NotNull Resource queryResource, @NotNull String[] selectors, Exception e) {
+        final String message = String.format(
+                "Query failed for Resource %s: query=%s, selectors=%s",
+                queryResource.getPath(), cleanLog.sanitize(query), Arrays.toString(selectors));
+        LOGGER.error(message, e);
+        return SlingGraphQLErrorHelper.toSpecification(message, e);
+    }
+
     private RuntimeWiring buildWiring(
             TypeDefinitionRegistry typeRegistry, Iterable<GraphQLScalarType> scalars, Resource r) {
         List<ObjectTypeDefinition> types = typeRegistry.getTypes(ObjectTypeDefinition.class);
@@ -396,12 +693,42 @@ public class DefaultQueryExecutor implements QueryExecutor {
             final String source = getDirectiveArgumentValue(d, FETCHER_SOURCE);
             SlingDataFetcher<Object> f = dataFetcherSelector.getSlingFetcher(name);
             if (f != null) {
-                result = new SlingDataFetcherWrapper<>(f, currentResource, options, source);
+                result = new SlingDataFetcherWrapper<>(
+                        f,
+                        currentResource,
+                        options,
+                        source,
+                        dataFetcherSelector.getBulkhead(name),
+                        dataFetcherSelector.getCircuitBreaker(name),
+                        dataFetcherSelector.getHedging(name),
+                        isDegradable(field),
+                        getParallelExecution(name));
             }
         }
         return result;
     }
 
+    private @Nullable ParallelExecution getParallelExecution(@NotNull String fetcherName) {
+        for (ParallelExecution parallelExecution : parallelExecutions) {
+            if (parallelExecution.isParallel(fetcherName)) {
+                return parallelExecution;
+            }
+        }
+        return null;
+    }
+
+    /** A degradable field must be nullable, as leaving a non-null field empty would discard its parent object */
+    private boolean isDegradable(@NotNull FieldDefinition field) {
+        if (field.getDirectives().stream().noneMatch(i -> DEGRADABLE_DIRECTIVE.equals(i.getName()))) {
+            return false;
+        }
+        if (field.getType() instanceof NonNullType) {
+            throw new SlingGraphQLException(
+                    String.format("Field %s is marked as @degradable but isn't nullable", field.getName()));
+        }
+        return true;
+    }
+
     private <T extends TypeDefinition<T>> TypeResolver getTypeResolver(
             TypeDefinition<T> typeDefinition, Resource currentResource) {
         TypeResolver resolver = null;
@@ -413,9 +740,11 @@ public class DefaultQueryExecutor implements QueryExecutor {
             final String name = validateResolverName(getDirectiveArgumentValue(d, RESOLVER_NAME));
             final String options = getDirectiveArgumentValue(d, RESOLVER_OPTIONS);
             final String source = getDirectiveArgumentValue(d, RESOLVER_SOURCE);
+            final Map<String, String> types =
+                    SlingTypeResolverWrapper.parseTypes(getDirectiveArgumentValue(d, RESOLVER_TYPES));
             SlingTypeResolver<Object> r = typeResolverSelector.getSlingTypeResolver(name);
             if (r != null) {
-                resolver = new SlingTypeResolverWrapper(r, currentResource, options, source);
+                resolver = new SlingTypeResolverWrapper(r, currentResource, options, source, types);
             }
         }
         return resolver;
@@ -438,7 +767,16 @@ public class DefaultQueryExecutor implements QueryExecutor {
 
     TypeDefinitionRegistry getTypeDefinitionRegistry(
             @NotNull String sdl, @NotNull Resource currentResource, @NotNull String[] selectors) {
+        return getTypeDefinitionRegistry(sdl, currentResource, selectors, null);
+    }
+
+    private TypeDefinitionRegistry getTypeDefinitionRegistry(
+            @NotNull String sdl,
+            @NotNull Resource currentResource,
+            @NotNull String[] selectors,
+            @Nullable TracingInstrumentation tracing) {
         TypeDefinitionRegistry typeRegistry = null;
+        boolean cacheHit = true;
         readLock.lock();
         String newHash = SHA256Hasher.getHash(sdl);
         /*
@@ -456,10 +794,16 @@ public class DefaultQueryExecutor implements QueryExecutor {
             try {
                 oldHash = resourceToHashMap.get(resourceToHashMapKey);
                 if (!newHash.equals(oldHash) || hashToSchemaMap.get(newHash) == null) {
+                    // a miss even if parsing fails, a hit if another thread cached the schema meanwhile
+                    cacheHit = false;
                     typeRegistry = new SchemaParser().parse(sdl);
                     typeRegistry.add(Directives.CONNECTION);
                     typeRegistry.add(Directives.FETCHER);
+                    typeRegistry.add(Directives.DEGRADABLE);
                     typeRegistry.add(Directives.RESOLVER);
+                    typeRegistry.add(Directives.DEFER);
+                    typeRegistry.add(Directives.STREAM);
+                    typeRegistry.add(Directives.LIVE);
                     for (ObjectTypeDefinition typeDefinition : typeRegistry.getTypes(ObjectTypeDefinition.class)) {
                         handleConnectionTypes(typeDefinition, typeRegistry);
                     }
@@ -474,6 +818,9 @@ public class DefaultQueryExecutor implements QueryExecutor {
             }
         }
         try {
+            if (tracing != null) {
+                tracing.schemaCache(cacheHit);
+            }
             /*
              * when the cache is disabled we need to return the registry directly, since it will be created for each request
              */
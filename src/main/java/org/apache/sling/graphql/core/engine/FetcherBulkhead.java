@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import graphql.ErrorType;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetchingEnvironment;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Limits the concurrent invocations of the SlingDataFetcher which has the
+ *  configured name, so that a slow backend can't absorb all request threads.
+ *  Invocations which can't get a permit within the maximum wait, or which
+ *  exceed the invocation timeout, fail with a field error while the rest of
+ *  the query executes normally.
+ *
+ *  With a timeout, the fetcher runs in a thread of the bulkhead while the
+ *  request thread waits for it, so it must not depend on thread-bound state.
+ *  Timed out invocations are interrupted, and keep their permit until they
+ *  actually return. As the request carries on meanwhile, timeouts are only
+ *  safe for fetchers which don't use the ResourceResolver of the request,
+ *  which isn't thread-safe.
+ */
+@Component(
+        service = FetcherBulkhead.class,
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"webconsole.configurationFactory.nameHint=Bulkhead for {name}"})
+@Designate(ocd = FetcherBulkhead.Config.class, factory = true)
+public class FetcherBulkhead {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetcherBulkhead.class);
+
+    private static final String METRIC_NS = FetcherBulkhead.class.getName();
+
+    @ObjectClassDefinition(
+            name = "Apache Sling GraphQL Data Fetcher Bulkhead",
+            description = "Limits the concurrent invocations of a SlingDataFetcher")
+    @interface Config {
+        @AttributeDefinition(
+                name = "Fetcher name",
+                description = "The " + SlingDataFetcher.NAME_SERVICE_PROPERTY
+                        + " service property of the SlingDataFetcher to limit, e.g. ns/myFetcher")
+        String name();
+
+        @AttributeDefinition(
+                name = "Maximum concurrent invocations",
+                description = "The maximum number of invocations of the fetcher which run at the same time.")
+        int maxConcurrent() default 10;
+
+        @AttributeDefinition(
+                name = "Maximum wait",
+                description = "The maximum amount of time an invocation waits for one of the others to complete, when"
+                        + " the maximum is reached, before failing (in milliseconds).")
+        long maxWait() default 0;
+
+        @AttributeDefinition(
+                name = "Invocation timeout",
+                description = "The maximum duration of an invocation of the fetcher (in milliseconds), 0 for none."
+                        + " A timed out invocation keeps running while the request carries on, so only set a timeout"
+                        + " for fetchers which don't use the ResourceResolver of the request.")
+        long timeout() default 0;
+    }
+
+    @Reference
+    private MetricsService metricsService;
+
+    private String name;
+    private long maxWaitMillis;
+    private long timeoutMillis;
+    private Semaphore permits;
+    private ThreadPoolExecutor executor;
+    private Counter rejected;
+    private Counter timeouts;
+
+    @Activate
+    public void activate(Config config) {
+        name = config.name();
+        maxWaitMillis = Math.max(config.maxWait(), 0);
+        timeoutMillis = Math.max(config.timeout(), 0);
+        final int maxConcurrent = Math.max(config.maxConcurrent(), 1);
+        permits = new Semaphore(maxConcurrent, true);
+        if (timeoutMillis > 0) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(
+                    maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                        final Thread thread = new Thread(
+                                runnable, "sling-graphql-bulkhead-" + name + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        rejected = metricsService.counter(METRIC_NS + "." + name + ".rejected");
+        timeouts = metricsService.counter(METRIC_NS + "." + name + ".timeouts");
+        LOGGER.info(
+                "Limiting SlingDataFetcher {} to {} concurrent invocations, max wait={}ms, timeout={}ms",
+                name,
+                maxConcurrent,
+                maxWaitMillis,
+                timeoutMillis);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /** @return the name of the SlingDataFetcher this bulkhead applies to */
+    public String getName() {
+        return name;
+    }
+
+    /** Invokes the fetcher within the limits of this bulkhead
+     *  @return the value returned by the fetcher, or a DataFetcherResult with an error if
+     *  the invocation was rejected or timed out
+     */
+    Object invoke(@NotNull Callable<Object> invocation, @NotNull DataFetchingEnvironment env) throws Exception {
+        if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            return error(env, "SlingDataFetcher '%s' is saturated, the field was not fetched", name);
+        }
+        if (executor == null) {
+            try {
+                return invocation.call();
+            } finally {
+                permits.release();
+            }
+        }
+        // claimed by the task when it starts, or by the request thread if it's cancelled before
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<Object> result;
+        try {
+            result = executor.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return invocation.call();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancel(result, started);
+            timeouts.increment();
+            return error(env, "SlingDataFetcher '%s' timed out after %d ms", name, timeoutMillis);
+        } catch (InterruptedException e) {
+            cancel(result, started);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /** A task which didn't start yet won't release its permit, as it never runs once cancelled */
+    private void cancel(@NotNull Future<Object> result, @NotNull AtomicBoolean started) {
+        result.cancel(true);
+        if (started.compareAndSet(false, true)) {
+            permits.release();
+        }
+    }
+
+    int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    private static DataFetcherResult<Object> error(DataFetchingEnvironment env, String format, Object... args) {
+        return DataFetcherResult.newResult()
+                .error(GraphqlErrorBuilder.newError(env)
+                        .errorType(ErrorType.DataFetchingException)
+                        .message(format, args)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import graphql.ErrorClassification;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetchingEnvironment;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Stops calling the SlingDataFetcher which has the configured name while it
+ *  fails. The circuit opens when the failure rate of the recent invocations
+ *  crosses a threshold, slow invocations counting as failures. While it's open
+ *  the fetcher isn't called, and its field gets the last good value for the
+ *  same key if there's one, or an error otherwise. Once the open duration has
+ *  passed a few trial invocations are let through, which close the circuit if
+ *  they all succeed, or open it again.
+ *
+ *  The key of the last good values includes the user of the current resource,
+ *  so that they are never served to another user. Only values which don't
+ *  depend on the request which fetched them are kept, see detach().
+ */
+@Component(
+        service = FetcherCircuitBreaker.class,
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"webconsole.configurationFactory.nameHint=Circuit breaker for {name}"})
+@Designate(ocd = FetcherCircuitBreaker.Config.class, factory = true)
+public class FetcherCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetcherCircuitBreaker.class);
+
+    private static final String METRIC_NS = FetcherCircuitBreaker.class.getName();
+
+    /** Classifies the errors of fields which weren't fetched because the circuit is open */
+    enum Classification implements ErrorClassification {
+        CircuitOpen
+    }
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private enum Permission {
+        REJECTED,
+        CALL,
+        TRIAL
+    }
+
+    @ObjectClassDefinition(
+            name = "Apache Sling GraphQL Data Fetcher Circuit Breaker",
+            description = "Stops calling a SlingDataFetcher while it fails")
+    @interface Config {
+        @AttributeDefinition(
+                name = "Fetcher name",
+                description = "The " + SlingDataFetcher.NAME_SERVICE_PROPERTY
+                        + " service property of the SlingDataFetcher to protect, e.g. ns/myFetcher")
+        String name();
+
+        @AttributeDefinition(
+                name = "Failure rate threshold",
+                description = "The percentage of failed invocations, among the recent ones, which opens the circuit.")
+        int failureRateThreshold() default 50;
+
+        @AttributeDefinition(
+                name = "Slow invocation threshold",
+                description = "Invocations which take longer than this (in milliseconds) count as failures, 0 to"
+                        + " only count errors.")
+        long slowCallThreshold() default 0;
+
+        @AttributeDefinition(
+                name = "Window size",
+                description = "The number of recent invocations the failure rate is computed on.")
+        int windowSize() default 50;
+
+        @AttributeDefinition(
+                name = "Minimum invocations",
+                description = "The minimum number of recent invocations before the circuit can open.")
+        int minimumCalls() default 20;
+
+        @AttributeDefinition(
+                name = "Open duration",
+                description = "How long the circuit stays open before trial invocations are let through (in"
+                        + " milliseconds).")
+        long openDuration() default 10000;
+
+        @AttributeDefinition(
+                name = "Trial invocations",
+                description = "The number of trial invocations which must succeed to close the circuit again.")
+        int trialCalls() default 5;
+
+        @AttributeDefinition(
+                name = "Fallback cache size",
+                description = "The number of last good values kept to be served while the circuit is open, 0 to"
+                        + " always return an error. Only strings, numbers, booleans, enums, and lists and maps with"
+                        + " string keys of those are kept, as copies. Other values, like Resource objects, Calendar"
+                        + " values or objects adapted from resources, are never kept and their fields get an error while"
+                        + " the circuit is open: a fetcher must return such plain values to get a fallback.")
+        int fallbackCacheSize() default 100;
+    }
+
+    @Reference
+    private MetricsService metricsService;
+
+    private String name;
+    private int failureRateThreshold;
+    private long slowCallNanos;
+    private int minimumCalls;
+    private long openNanos;
+    private int trialCalls;
+    private Map<Object, Object> lastGoodValues;
+
+    private Counter opened;
+    private Counter fallbacks;
+    private Counter rejected;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    private boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    @Activate
+    public void activate(Config config) {
+        name = config.name();
+        failureRateThreshold = Math.max(1, Math.min(100, config.failureRateThreshold()));
+        slowCallNanos = config.slowCallThreshold() > 0
+                ? TimeUnit.MILLISECONDS.toNanos(config.slowCallThreshold())
+                : Long.MAX_VALUE;
+        window = new boolean[Math.max(1, config.windowSize())];
+        minimumCalls = Math.max(1, Math.min(window.length, config.minimumCalls()));
+        openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.openDuration()));
+        trialCalls = Math.max(1, config.trialCalls());
+        final int fallbackCacheSize = config.fallbackCacheSize();
+        lastGoodValues = fallbackCacheSize > 0
+                ? Collections.synchronizedMap(new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                        return size() > fallbackCacheSize;
+                    }
+                })
+                : null;
+        opened = metricsService.counter(METRIC_NS + "." + name + ".opened");
+        fallbacks = metricsService.counter(METRIC_NS + "." + name + ".fallbacks");
+        rejected = metricsService.counter(METRIC_NS + "." + name + ".rejected");
+    }
+
+    /** @return the name of the SlingDataFetcher this circuit breaker applies to */
+    public String getName() {
+        return name;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /** Invokes the fetcher unless the circuit is open
+     *  @return the value returned by the fetcher, or the last good value or a DataFetcherResult with
+     *  an error if the circuit is open
+     */
+    Object invoke(
+            @NotNull Callable<Object> invocation,
+            @NotNull DataFetchingEnvironment env,
+            @Nullable Resource currentResource)
+            throws Exception {
+        final Object key = lastGoodValues == null ? null : getKey(env, currentResource);
+        final Permission permission = acquire();
+        if (permission == Permission.REJECTED) {
+            final Object lastGood = key == null ? null : lastGoodValues.get(key);
+            if (lastGood != null) {
+                fallbacks.increment();
+                return lastGood;
+            }
+            rejected.increment();
+            return DataFetcherResult.newResult()
+                    .error(GraphqlErrorBuilder.newError(env)
+                            .errorType(Classification.CircuitOpen)
+                            .message("SlingDataFetcher '%s' is unavailable, its circuit is open", name)
+                            .build())
+                    .build();
+        }
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final Object value = invocation.call();
+            // bulkhead timeouts and rejections are returned as errors
+            success = !(value instanceof DataFetcherResult && ((DataFetcherResult<?>) value).hasErrors());
+            if (success && key != null && value != null) {
+                final Object detached = detach(value);
+                if (detached != null) {
+                    lastGoodValues.put(key, detached);
+                }
+            }
+            return value;
+        } finally {
+            record(permission, success && System.nanoTime() - start <= slowCallNanos);
+        }
+    }
+
+    /** @return a copy of the value which can be served after the request which fetched it is over, or null if the
+     *  value might depend on that request, like Resource objects, which are bound to its ResourceResolver
+     */
+    static @Nullable Object detach(@NotNull Object value) {
+        if (value instanceof String
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Double
+                || value instanceof Float
+                || value instanceof BigInteger
+                || value instanceof BigDecimal) {
+            return value;
+        }
+        if (value instanceof List) {
+            final List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            for (Object item : (List<?>) value) {
+                final Object detached = item == null ? null : detach(item);
+                if (item != null && detached == null) {
+                    return null;
+                }
+                copy.add(detached);
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        if (value instanceof Map) {
+            final Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                final Object item = entry.getValue();
+                final Object detached = item == null ? null : detach(item);
+                if (!(entry.getKey() instanceof String) || item != null && detached == null) {
+                    return null;
+                }
+                copy.put((String) entry.getKey(), detached);
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        return null;
+    }
+
+    private static Object getKey(@NotNull DataFetchingEnvironment env, @Nullable Resource currentResource) {
+        final Object source = env.getSource();
+        return Arrays.asList(
+                currentResource == null ? null : currentResource.getPath(),
+                currentResource == null || currentResource.getResourceResolver() == null
+                        ? null
+                        : currentResource.getResourceResolver().getUserID(),
+                source instanceof Resource ? ((Resource) source).getPath() : source,
+                env.getArguments());
+    }
+
+    private synchronized Permission acquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return Permission.REJECTED;
+            }
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted < trialCalls) {
+                trialsStarted++;
+                return Permission.TRIAL;
+            }
+            return Permission.REJECTED;
+        }
+        return Permission.CALL;
+    }
+
+    private synchronized void record(Permission permission, boolean success) {
+        if (permission == Permission.TRIAL && state == State.HALF_OPEN) {
+            if (!success) {
+                open();
+            } else if (++trialsSucceeded >= trialCalls) {
+                LOGGER.info("Closing the circuit of SlingDataFetcher {}", name);
+                state = State.CLOSED;
+                Arrays.fill(window, false);
+                windowIndex = 0;
+                windowCount = 0;
+                windowFailures = 0;
+            }
+        } else if (permission == Permission.CALL && state == State.CLOSED) {
+            if (windowCount == window.length) {
+                windowFailures -= window[windowIndex] ? 1 : 0;
+            } else {
+                windowCount++;
+            }
+            window[windowIndex] = !success;
+            windowFailures += success ? 0 : 1;
+            windowIndex = (windowIndex + 1) % window.length;
+            if (windowCount >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCount) {
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        LOGGER.warn(
+                "Opening the circuit of SlingDataFetcher {} for {} ms", name, TimeUnit.NANOSECONDS.toMillis(openNanos));
+        opened.increment();
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+}
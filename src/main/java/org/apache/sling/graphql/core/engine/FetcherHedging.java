@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/** Hedges the invocations of the SlingDataFetcher which has the configured
+ *  name: if an invocation hasn't returned within the configured percentile of
+ *  the fetcher's recent latencies, a second one is started and the first value
+ *  returned wins, the other invocation being interrupted. The number of hedged
+ *  invocations is capped by a token bucket, which gains a fraction of a token
+ *  per invocation.
+ *
+ *  Invocations which may be hedged run in threads of this component while the
+ *  request thread waits for the winner, for up to the configured timeout.
+ *  Both invocations run at the same time, and the loser keeps running until it
+ *  notices the interruption, so only idempotent fetchers which don't depend on
+ *  thread-bound state and don't use the ResourceResolver of the request, which
+ *  isn't thread-safe, can be hedged. Invocations which can't be hedged, while
+ *  the threshold is unknown, without a token or when all threads are busy, are
+ *  called directly on the request thread.
+ */
+@Component(
+        service = FetcherHedging.class,
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"webconsole.configurationFactory.nameHint=Hedging for {name}"})
+@Designate(ocd = FetcherHedging.Config.class, factory = true)
+public class FetcherHedging {
+
+    private static final String METRIC_NS = FetcherHedging.class.getName();
+
+    /** The number of recent latencies the percentile is computed on */
+    static final int SAMPLES = 1000;
+
+    /** The number of latencies recorded between two computations of the percentile */
+    static final int RECOMPUTE_INTERVAL = 20;
+
+    /** The maximum number of hedges which can be saved up while there's no need for them */
+    static final double MAX_TOKENS = 10;
+
+    @ObjectClassDefinition(
+            name = "Apache Sling GraphQL Data Fetcher Hedging",
+            description = "Starts a second invocation of a SlingDataFetcher when the first one is slow")
+    @interface Config {
+        @AttributeDefinition(
+                name = "Fetcher name",
+                description = "The " + SlingDataFetcher.NAME_SERVICE_PROPERTY
+                        + " service property of the SlingDataFetcher to hedge, e.g. ns/myFetcher")
+        String name();
+
+        @AttributeDefinition(
+                name = "Latency percentile",
+                description = "Invocations slower than this percentile of the recent ones are hedged.")
+        int percentile() default 95;
+
+        @AttributeDefinition(
+                name = "Minimum delay",
+                description = "The minimum time to wait before hedging an invocation (in milliseconds).")
+        long minDelay() default 0;
+
+        @AttributeDefinition(
+                name = "Maximum hedge rate",
+                description = "The maximum percentage of invocations which are hedged.")
+        int maxHedgeRate() default 10;
+
+        @AttributeDefinition(
+                name = "Minimum samples",
+                description = "The number of invocations to observe before hedging starts.")
+        int minSamples() default 100;
+
+        @AttributeDefinition(
+                name = "Maximum threads",
+                description = "The maximum number of threads running invocations of the fetcher.")
+        int maxThreads() default 20;
+
+        @AttributeDefinition(
+                name = "Timeout",
+                description = "The maximum time the request waits for the invocations of the fetcher (in"
+                        + " milliseconds). Slower invocations are interrupted and fail the field.")
+        long timeout() default 10000;
+    }
+
+    @Reference
+    private MetricsService metricsService;
+
+    private String name;
+    private int percentile;
+    private long minDelayNanos;
+    private double tokensPerInvocation;
+    private int minSamples;
+    private long timeoutNanos;
+    private ThreadPoolExecutor executor;
+    private Counter hedged;
+    private Counter won;
+
+    /** 0 until enough latencies have been observed */
+    private volatile long thresholdNanos;
+
+    // guarded by this
+    private final long[] samples = new long[SAMPLES];
+    private int sampleCount;
+    private int sampleIndex;
+    private int sinceRecompute;
+    private double tokens;
+
+    @Activate
+    public void activate(Config config) {
+        name = config.name();
+        percentile = Math.max(1, Math.min(100, config.percentile()));
+        minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.minDelay()));
+        tokensPerInvocation = Math.max(0, Math.min(100, config.maxHedgeRate())) / 100.0;
+        minSamples = Math.max(1, Math.min(SAMPLES, config.minSamples()));
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.timeout()));
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                0, Math.max(2, config.maxThreads()), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                    final Thread thread =
+                            new Thread(runnable, "sling-graphql-hedging-" + name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        hedged = metricsService.counter(METRIC_NS + "." + name + ".hedged");
+        won = metricsService.counter(METRIC_NS + "." + name + ".won");
+    }
+
+    @Deactivate
+    public void deactivate() {
+        executor.shutdownNow();
+    }
+
+    /** @return the name of the SlingDataFetcher this hedging applies to */
+    public String getName() {
+        return name;
+    }
+
+    /** @return the delay after which invocations are hedged, in nanoseconds, 0 while it's unknown */
+    long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /** Invokes the fetcher, and a second time if the first invocation is slow
+     *  @return the value of the invocation which returned first
+     */
+    Object invoke(@NotNull Callable<Object> invocation) throws Exception {
+        final long threshold = thresholdNanos;
+        final boolean mayHedge = addToken();
+        if (threshold == 0 || !mayHedge) {
+            // no hedge possible, avoids handing the invocation over to another thread
+            return timed(invocation);
+        }
+        final long deadline = System.nanoTime() + timeoutNanos;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final Future<?> primary;
+        try {
+            primary = executor.submit(attempt(invocation, result, pending, false));
+        } catch (RejectedExecutionException e) {
+            return timed(invocation);
+        }
+        Future<?> hedge = null;
+        try {
+            try {
+                return result.get(Math.min(threshold, timeoutNanos), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (takeToken()) {
+                    pending.incrementAndGet();
+                    try {
+                        hedge = executor.submit(attempt(invocation, result, pending, true));
+                        hedged.increment();
+                    } catch (RejectedExecutionException re) {
+                        pending.decrementAndGet();
+                    }
+                }
+            }
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new TimeoutException(String.format(
+                    "SlingDataFetcher '%s' timed out after %d ms", name, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            // interrupts the losing invocation, if it's still running
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private Runnable attempt(
+            Callable<Object> invocation, CompletableFuture<Object> result, AtomicInteger pending, boolean isHedge) {
+        return () -> {
+            try {
+                final Object value = timed(invocation);
+                if (result.complete(value) && isHedge) {
+                    won.increment();
+                }
+            } catch (Exception e) {
+                // fails only once no other invocation can return a value
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+    }
+
+    private Object timed(Callable<Object> invocation) throws Exception {
+        final long start = System.nanoTime();
+        final Object value = invocation.call();
+        record(System.nanoTime() - start);
+        return value;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        samples[sampleIndex] = latencyNanos;
+        sampleIndex = (sampleIndex + 1) % SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, SAMPLES);
+        if (sampleCount >= minSamples && (++sinceRecompute >= RECOMPUTE_INTERVAL || thresholdNanos == 0)) {
+            sinceRecompute = 0;
+            final long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            thresholdNanos = Math.max(Math.max(minDelayNanos, sorted[Math.max(0, index)]), 1);
+        }
+    }
+
+    /** @return true if a hedge can be afforded, after adding the share of this invocation */
+    private synchronized boolean addToken() {
+        tokens = Math.min(MAX_TOKENS, tokens + tokensPerInvocation);
+        return tokens >= 1;
+    }
+
+    private synchronized boolean takeToken() {
+        if (tokens >= 1) {
+            tokens--;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+import graphql.ErrorClassification;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetchingEnvironment;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Tells that a query execution started while the instance was overloaded, so
+ *  that the fields marked with the {@code @degradable} directive are left
+ *  empty instead of calling their data fetchers. Stored in the GraphQLContext
+ *  of the execution, the decision being taken once when the execution starts
+ *  so that all its degradable fields are treated alike.
+ */
+class FieldDegradation {
+
+    /** Classifies the errors of fields which weren't fetched because the instance is overloaded */
+    enum Classification implements ErrorClassification {
+        Degraded
+    }
+
+    private final String reason;
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+
+    private FieldDegradation(@NotNull String reason) {
+        this.reason = reason;
+    }
+
+    static @Nullable FieldDegradation of(@NotNull DataFetchingEnvironment env) {
+        return env.getGraphQlContext() == null ? null : env.getGraphQlContext().get(FieldDegradation.class);
+    }
+
+    @NotNull
+    String getReason() {
+        return reason;
+    }
+
+    /** @return the empty result of a degradable field. Only the first occurrence
+     *  of each field gets an error, so that a list of objects doesn't add one
+     *  error per item.
+     */
+    @NotNull
+    DataFetcherResult<Object> skipped(@NotNull DataFetchingEnvironment env) {
+        final DataFetcherResult.Builder<Object> result = DataFetcherResult.newResult();
+        final String field = env.getExecutionStepInfo().getObjectType().getName() + "."
+                + env.getField().getName();
+        if (reported.add(field)) {
+            result.error(GraphqlErrorBuilder.newError(env)
+                    .errorType(Classification.Degraded)
+                    .message("Field '%s' was not fetched because the server is overloaded (%s)", field, reason)
+                    .build());
+        }
+        return result.build();
+    }
+
+    /** Evaluates the load signals against the configured thresholds when an execution starts */
+    static class Thresholds {
+
+        private static final long CPU_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final int cpuLoad;
+        private final int inFlight;
+        private final DoubleSupplier cpuLoadSource;
+
+        private volatile double cpuLoadSample;
+        private volatile long cpuLoadSampledAt;
+
+        /**
+         * @param cpuLoad the CPU load in percent from which fields are degraded, 0 to ignore the CPU load
+         * @param inFlight the number of executions in flight from which fields are degraded, 0 to ignore it
+         */
+        Thresholds(int cpuLoad, int inFlight) {
+            this(cpuLoad, inFlight, Thresholds::systemCpuLoad);
+        }
+
+        Thresholds(int cpuLoad, int inFlight, @NotNull DoubleSupplier cpuLoadSource) {
+            this.cpuLoad = Math.max(cpuLoad, 0);
+            this.inFlight = Math.max(inFlight, 0);
+            this.cpuLoadSource = cpuLoadSource;
+            this.cpuLoadSampledAt = System.nanoTime() - CPU_SAMPLE_INTERVAL_NANOS;
+        }
+
+        /**
+         * @param executions the number of executions in flight, including the one which starts
+         * @param overload supplies {@code true} if the caller of the execution is overloaded, can be null
+         * @return the degradation of the execution, or null if none of the signals crosses its threshold
+         */
+        @Nullable
+        FieldDegradation evaluate(int executions, @Nullable BooleanSupplier overload) {
+            if (inFlight > 0 && executions >= inFlight) {
+                return new FieldDegradation(executions + " queries in flight");
+            }
+            if (overload != null && overload.getAsBoolean()) {
+                return new FieldDegradation("requests are queued");
+            }
+            if (cpuLoad > 0) {
+                final double load = sampleCpuLoad();
+                if (load >= cpuLoad) {
+                    return new FieldDegradation(String.format("CPU load %.0f%%", load));
+                }
+            }
+            return null;
+        }
+
+        /** The CPU load is sampled at most once per interval, as reading it isn't free on all platforms */
+        private double sampleCpuLoad() {
+            final long now = System.nanoTime();
+            if (now - cpuLoadSampledAt >= CPU_SAMPLE_INTERVAL_NANOS) {
+                cpuLoadSample = cpuLoadSource.getAsDouble();
+                cpuLoadSampledAt = now;
+            }
+            return cpuLoadSample;
+        }
+
+        /** @return the system load average per processor in percent, or a negative value if it isn't available */
+        private static double systemCpuLoad() {
+            final double loadAverage =
+                    ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+            return loadAverage < 0
+                    ? loadAverage
+                    : loadAverage * 100 / Runtime.getRuntime().availableProcessors();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import graphql.schema.DataFetchingEnvironment;
+import org.apache.sling.graphql.api.SlingGraphQLException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Runs the invocations of selected SlingDataFetchers on other threads, so
+ *  that independent sibling fields and the elements of large lists are
+ *  fetched at the same time instead of one after another: CPU-bound fetchers
+ *  on a bounded ForkJoinPool, fetchers which block on I/O on virtual threads.
+ *
+ *  graphql-java itself keeps running on the request thread: the results of
+ *  the parallel invocations are handed back to it, so that it completes
+ *  their fields and calls the other fetchers, which might not be
+ *  thread-safe, like the ResourceResolver they use. So only the invocations
+ *  of the selected fetchers run in parallel, not whole subtrees of the query.
+ *  The request thread only
+ *  waits for the parallel invocations until the execution is cancelled or its
+ *  deadline passes: the invocations which are still running are then
+ *  interrupted and their fields fail, so that the execution can complete.
+ */
+class ParallelExecution {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelExecution.class);
+
+    private static final Runnable WAKE_UP = () -> {};
+    /** How often the request thread checks whether the execution was cancelled while it waits */
+    private static final long CANCELLATION_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ExecutorService executor;
+    private final Set<String> fetchers;
+    private final int threshold;
+    private final int maxPerQuery;
+
+    /**
+     * @param executor runs the parallel invocations, shut down when this is closed
+     * @param fetchers the names of the fetchers which can run in parallel
+     * @param threshold the number of invocations of those fetchers a query runs on the request thread before
+     *                  it runs them in parallel
+     * @param maxPerQuery the maximum number of invocations of a query which run at the same time, including the
+     *                    one on the request thread
+     */
+    private ParallelExecution(
+            @NotNull ExecutorService executor, @NotNull String[] fetchers, int threshold, int maxPerQuery) {
+        this.executor = executor;
+        this.fetchers = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(fetchers)));
+        this.threshold = Math.max(0, threshold);
+        this.maxPerQuery = Math.max(1, maxPerQuery);
+    }
+
+    /** @param parallelism the number of threads of the pool */
+    static @NotNull ParallelExecution onForkJoinPool(
+            int parallelism, @NotNull String[] fetchers, int threshold, int maxPerQuery) {
+        final ForkJoinPool pool = new ForkJoinPool(
+                Math.max(1, parallelism),
+                forkJoinPool -> {
+                    final ForkJoinWorkerThread thread =
+                            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                    thread.setName("sling-graphql-parallel-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null,
+                true);
+        return new ParallelExecution(pool, fetchers, threshold, maxPerQuery);
+    }
+
+    /** Creates a virtual thread per invocation if the JVM supports them, or falls back to a bounded pool
+     *  of platform threads. When that pool is saturated, further invocations run on the request thread.
+     *
+     * @param fallbackThreads the maximum number of platform threads used on JVMs without virtual threads
+     */
+    static @NotNull ParallelExecution onVirtualThreads(
+            int fallbackThreads, @NotNull String[] fetchers, int threshold, int maxPerQuery) {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor("sling-graphql-blocking-");
+        if (executor == null) {
+            LOGGER.info(
+                    "Virtual threads are not available, using up to {} platform threads for the blocking fetchers",
+                    fallbackThreads);
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(
+                    0, Math.max(1, fallbackThreads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                        final Thread thread =
+                                new Thread(runnable, "sling-graphql-blocking-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return new ParallelExecution(executor, fetchers, threshold, maxPerQuery);
+    }
+
+    /** Uses the Java 21 API by reflection, as this bundle is built for older JVMs
+     *
+     * @return an executor which starts a named virtual thread per task, or null if the JVM has no virtual threads
+     */
+    static @Nullable ExecutorService newVirtualThreadPerTaskExecutor(@NotNull String namePrefix) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            final ThreadFactory factory =
+                    (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    boolean isParallel(@NotNull String fetcherName) {
+        return fetchers.contains(fetcherName);
+    }
+
+    @NotNull
+    Query newQuery(@NotNull HandOff handOff) {
+        return new Query(this, handOff);
+    }
+
+    /** @return the query of this parallel execution stored in the GraphQLContext of the execution, if any */
+    @Nullable
+    Query queryOf(@NotNull DataFetchingEnvironment env) {
+        return env.getGraphQlContext() == null ? null : env.getGraphQlContext().get(this);
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /** Hands the results of the parallel invocations of an execution back to the request thread.
+     *  Shared by the queries of all the parallel executions which apply to it.
+     */
+    static class HandOff {
+
+        private final BlockingQueue<Runnable> completions = new LinkedBlockingQueue<>();
+        private final QueryCancellation cancellation;
+        /** The results of the invocations which are still running, and their tasks, used on the request thread */
+        private final Map<CompletableFuture<Object>, Future<?>> pending = new HashMap<>();
+
+        /** @param cancellation the cancellation of the execution, null if it can't be cancelled */
+        HandOff(@Nullable QueryCancellation cancellation) {
+            this.cancellation = cancellation;
+        }
+
+        private void add(@NotNull Runnable completion) {
+            completions.add(completion);
+        }
+
+        /** Runs the completions of the parallel invocations on the calling thread until the execution is done,
+         *  or fails the invocations still running once the execution is cancelled
+         */
+        <T> T join(@NotNull CompletableFuture<T> execution) {
+            execution.whenComplete((r, t) -> completions.add(WAKE_UP));
+            try {
+                while (!execution.isDone()) {
+                    if (cancellation == null) {
+                        completions.take().run();
+                        continue;
+                    }
+                    long wait = Math.min(cancellation.getRemainingNanos(), CANCELLATION_CHECK_NANOS);
+                    if (cancellation.isCancelled()) {
+                        abandonPending();
+                        // the invocations started meanwhile are abandoned at the next check
+                        wait = CANCELLATION_CHECK_NANOS;
+                    }
+                    final Runnable completion = completions.poll(wait, TimeUnit.NANOSECONDS);
+                    if (completion != null) {
+                        completion.run();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SlingGraphQLException("Interrupted while waiting for the parallel data fetchers.", e);
+            }
+            try {
+                return execution.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        /** Interrupts the invocations which are still running and fails their fields, which lets
+         *  graphql-java complete the execution. Their late completions are ignored.
+         */
+        private void abandonPending() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            final String reason = cancellation.getReason();
+            LOGGER.debug("{}, abandoning {} parallel data fetcher invocations", reason, pending.size());
+            final List<Map.Entry<CompletableFuture<Object>, Future<?>>> abandoned = new ArrayList<>(pending.entrySet());
+            pending.clear();
+            for (Map.Entry<CompletableFuture<Object>, Future<?>> entry : abandoned) {
+                entry.getValue().cancel(true);
+                entry.getKey()
+                        .completeExceptionally(new SlingGraphQLException(reason + ", the data fetcher was abandoned."));
+            }
+        }
+    }
+
+    /** The parallel invocations of a single execution, stored in its GraphQLContext. Its
+     *  methods are only called on the request thread, the other threads only add to the
+     *  completions of the hand-off.
+     */
+    static class Query {
+
+        private final ParallelExecution parallel;
+        private final HandOff handOff;
+        private int invocations;
+        private int running;
+
+        private Query(@NotNull ParallelExecution parallel, @NotNull HandOff handOff) {
+            this.parallel = parallel;
+            this.handOff = handOff;
+        }
+
+        /** @return the value of the invocation, or a future that's completed on the request thread if
+         *  the invocation runs in parallel
+         */
+        @Nullable
+        Object invoke(@NotNull Callable<Object> invocation) throws Exception {
+            if (++invocations <= parallel.threshold || running + 1 >= parallel.maxPerQuery) {
+                return invocation.call();
+            }
+            final CompletableFuture<Object> result = new CompletableFuture<>();
+            running++;
+            try {
+                final Future<?> task = parallel.executor.submit(() -> {
+                    Object value = null;
+                    Throwable failure = null;
+                    try {
+                        value = invocation.call();
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                    final Object v = value;
+                    final Throwable f = failure;
+                    handOff.add(() -> {
+                        if (handOff.pending.remove(result) == null) {
+                            // abandoned
+                            return;
+                        }
+                        running--;
+                        if (f == null) {
+                            result.complete(v);
+                        } else {
+                            result.completeExceptionally(f);
+                        }
+                    });
+                });
+                handOff.pending.put(result, task);
+            } catch (RejectedExecutionException e) {
+                // the pool is saturated or shutting down
+                running--;
+                return invocation.call();
+            }
+            return result;
+        }
+    }
+}
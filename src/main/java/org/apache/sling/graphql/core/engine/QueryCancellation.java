@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import graphql.ErrorType;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.schema.DataFetchingEnvironment;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Tells whether a query execution must stop starting further data fetchers,
+ *  because its deadline has passed or its caller cancelled it, for example
+ *  when the HTTP client has disconnected. Stored in the GraphQLContext of the
+ *  execution, so that fetchers can check it cooperatively.
+ */
+class QueryCancellation {
+
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+    private final BooleanSupplier signal;
+    private final AtomicBoolean reported = new AtomicBoolean();
+
+    private QueryCancellation(long timeoutMillis, @Nullable BooleanSupplier signal) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.signal = signal;
+    }
+
+    /**
+     * @param configured the timeout set in the executor configuration, 0 for none
+     * @param requested the timeout requested for a single execution, 0 for none
+     * @return the timeout which applies, the requested one being capped by the configured one
+     */
+    static long effectiveTimeout(long configured, long requested) {
+        if (configured <= 0) {
+            return Math.max(requested, 0);
+        }
+        return requested > 0 ? Math.min(configured, requested) : configured;
+    }
+
+    /**
+     * @param timeoutMillis the timeout of the execution, 0 or less for none
+     * @param signal supplies {@code true} once the caller has cancelled the execution, can be null
+     * @return the cancellation of the execution, or null if it has neither a timeout nor a signal
+     */
+    static @Nullable QueryCancellation create(long timeoutMillis, @Nullable BooleanSupplier signal) {
+        if (timeoutMillis <= 0 && signal == null) {
+            return null;
+        }
+        return new QueryCancellation(Math.max(timeoutMillis, 0), signal);
+    }
+
+    static @Nullable QueryCancellation of(@NotNull DataFetchingEnvironment env) {
+        return env.getGraphQlContext() == null ? null : env.getGraphQlContext().get(QueryCancellation.class);
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    boolean isExpired() {
+        return timeoutMillis > 0 && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    boolean isCancelled() {
+        return isExpired() || (signal != null && signal.getAsBoolean());
+    }
+
+    /** @return the time left until the deadline, {@link Long#MAX_VALUE} if there's none */
+    long getRemainingNanos() {
+        return timeoutMillis > 0 ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /** @return why the execution must stop, once it's cancelled */
+    @NotNull
+    String getReason() {
+        if (isExpired()) {
+            return String.format("Query execution exceeded its deadline of %d ms", timeoutMillis);
+        }
+        return "Query execution was cancelled";
+    }
+
+    /** @return the error to add to the result for a field that's skipped because
+     *  the execution is cancelled. Only the first skipped field gets an error, to
+     *  avoid flooding the result with one error per remaining field.
+     */
+    @Nullable
+    GraphQLError skipped(@NotNull DataFetchingEnvironment env) {
+        if (!reported.compareAndSet(false, true)) {
+            return null;
+        }
+        return GraphqlErrorBuilder.newError(env)
+                .errorType(ErrorType.ExecutionAborted)
+                .message("%s, the remaining fields were not fetched", getReason())
+                .build();
+    }
+}
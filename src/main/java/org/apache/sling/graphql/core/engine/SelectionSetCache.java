@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import graphql.schema.DataFetchingEnvironment;
+import org.apache.sling.graphql.api.SelectionSet;
+import org.jetbrains.annotations.NotNull;
+
+/** Per-request cache of the {@link SelectionSetWrapper}s, stored in the
+ *  GraphQLContext. The selection set of a field only depends on the field's
+ *  AST nodes, its type and the request variables, so all the executions of
+ *  a field, like the ones for the items of a list, share the same instance.
+ */
+class SelectionSetCache {
+
+    private final Map<List<Object>, SelectionSet> selectionSets = new ConcurrentHashMap<>();
+
+    @NotNull
+    static SelectionSet getSelectionSet(@NotNull DataFetchingEnvironment env) {
+        final SelectionSetCache cache =
+                env.getGraphQlContext() == null ? null : env.getGraphQlContext().get(SelectionSetCache.class);
+        if (cache == null || env.getMergedField() == null) {
+            return new SelectionSetWrapper(env.getSelectionSet());
+        }
+        // MergedField equality is based on the identity of the field's AST nodes
+        return cache.selectionSets.computeIfAbsent(
+                Arrays.asList(env.getMergedField(), env.getFieldType()),
+                key -> new SelectionSetWrapper(env.getSelectionSet()));
+    }
+}
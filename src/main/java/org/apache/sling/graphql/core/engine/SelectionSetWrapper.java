@@ -21,8 +21,11 @@ package org.apache.sling.graphql.core.engine;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import graphql.schema.DataFetchingFieldSelectionSet;
 import org.apache.sling.graphql.api.SelectedField;
@@ -32,12 +35,49 @@ import org.jetbrains.annotations.Nullable;
 
 /**
  * Implement a wrapper for GraphQL DataFetchingFieldSelectionSet.
+ *
+ * Instances are not modified after construction, so they can be shared between
+ * the executions of a field.
  */
 public class SelectionSetWrapper implements SelectionSet {
 
-    private List<SelectedField> fields = new ArrayList<>();
+    private final List<SelectedField> fields = new ArrayList<>();
+
+    private final Map<String, SelectedField> fieldsMap = new HashMap<>();
+
+    /** Computed on first use, concurrent computations yield equal values */
+    private volatile LeafPaths leafPaths;
 
-    private Map<String, SelectedField> fieldsMap = new HashMap<>();
+    private static final class LeafPaths {
+        final Set<String> all;
+        final Map<String, Set<String>> byObjectType;
+
+        LeafPaths(List<SelectedField> fields) {
+            final Set<String> allPaths = new LinkedHashSet<>();
+            final Map<String, Set<String>> byType = new LinkedHashMap<>();
+            for (SelectedField field : fields) {
+                final Set<String> fieldPaths = new LinkedHashSet<>();
+                collect(field, field.getName(), fieldPaths);
+                allPaths.addAll(fieldPaths);
+                for (String objectTypeName : field.getObjectTypeNames()) {
+                    byType.computeIfAbsent(objectTypeName, k -> new LinkedHashSet<>())
+                            .addAll(fieldPaths);
+                }
+            }
+            byType.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+            all = Collections.unmodifiableSet(allPaths);
+            byObjectType = byType;
+        }
+
+        private static void collect(SelectedField field, String path, Set<String> paths) {
+            final List<SelectedField> subFields = field.getSubSelectedFields();
+            if (subFields.isEmpty()) {
+                paths.add(path);
+            } else {
+                subFields.forEach(sub -> collect(sub, path + "/" + sub.getName(), paths));
+            }
+        }
+    }
 
     public SelectionSetWrapper(@Nullable DataFetchingFieldSelectionSet selectionSet) {
         if (selectionSet != null) {
@@ -87,4 +127,25 @@ public class SelectionSetWrapper implements SelectionSet {
     public SelectedField get(String qualifiedName) {
         return fieldsMap.get(qualifiedName);
     }
+
+    @Override
+    @NotNull
+    public Set<String> getLeafPaths() {
+        return getOrComputeLeafPaths().all;
+    }
+
+    @Override
+    @NotNull
+    public Set<String> getLeafPaths(@NotNull String objectTypeName) {
+        return getOrComputeLeafPaths().byObjectType.getOrDefault(objectTypeName, Collections.emptySet());
+    }
+
+    private LeafPaths getOrComputeLeafPaths() {
+        LeafPaths result = leafPaths;
+        if (result == null) {
+            result = new LeafPaths(fields);
+            leafPaths = result;
+        }
+        return result;
+    }
 }
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.graphql.core.engine;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -28,6 +29,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.graphql.api.SlingDataFetcher;
 import org.apache.sling.graphql.core.osgi.ServiceReferenceObjectTuple;
+import org.apache.sling.graphql.core.osgi.ServiceSnapshot;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.ServiceReference;
@@ -50,6 +52,18 @@ public class SlingDataFetcherSelector {
     private final Map<String, TreeSet<ServiceReferenceObjectTuple<SlingDataFetcher<Object>>>> dataFetchers =
             new HashMap<>();
 
+    /** Published on bind and unbind, so that lookups are lock-free */
+    private volatile ServiceSnapshot<SlingDataFetcher<Object>> snapshot = ServiceSnapshot.empty();
+
+    /** Bulkheads by fetcher name, copied on bind and unbind */
+    private volatile Map<String, FetcherBulkhead> bulkheads = Collections.emptyMap();
+
+    /** Circuit breakers by fetcher name, copied on bind and unbind */
+    private volatile Map<String, FetcherCircuitBreaker> circuitBreakers = Collections.emptyMap();
+
+    /** Hedging by fetcher name, copied on bind and unbind */
+    private volatile Map<String, FetcherHedging> hedgings = Collections.emptyMap();
+
     /** Fetchers which have a name starting with this prefix must be
      *  under the {#link RESERVED_PACKAGE_PREFIX} package.
      */
@@ -72,11 +86,25 @@ public class SlingDataFetcherSelector {
      * Returns a SlingFetcher from the available OSGi services, if there's one registered with the supplied name.
      */
     private SlingDataFetcher<Object> getOsgiServiceFetcher(@NotNull String name) {
-        TreeSet<ServiceReferenceObjectTuple<SlingDataFetcher<Object>>> fetcherSet = dataFetchers.get(name);
-        if (fetcherSet != null && !fetcherSet.isEmpty()) {
-            return fetcherSet.last().getServiceObject();
-        }
-        return null;
+        return snapshot.get(name);
+    }
+
+    /** @return the bulkhead which limits the invocations of the named fetcher, or null if there's none */
+    @Nullable
+    FetcherBulkhead getBulkhead(@NotNull String name) {
+        return bulkheads.get(name);
+    }
+
+    /** @return the circuit breaker which protects the named fetcher, or null if there's none */
+    @Nullable
+    FetcherCircuitBreaker getCircuitBreaker(@NotNull String name) {
+        return circuitBreakers.get(name);
+    }
+
+    /** @return the hedging of the named fetcher, or null if there's none */
+    @Nullable
+    FetcherHedging getHedging(@NotNull String name) {
+        return hedgings.get(name);
     }
 
     private boolean hasValidName(
@@ -131,6 +159,7 @@ public class SlingDataFetcherSelector {
                 TreeSet<ServiceReferenceObjectTuple<SlingDataFetcher<Object>>> fetchers =
                         dataFetchers.computeIfAbsent(name, key -> new TreeSet<>());
                 fetchers.add(new ServiceReferenceObjectTuple<>(reference, slingDataFetcher));
+                snapshot = snapshot.next(dataFetchers);
             }
         }
     }
@@ -146,8 +175,70 @@ public class SlingDataFetcherSelector {
                             .filter(tuple -> reference.equals(tuple.getServiceReference()))
                             .findFirst();
                     tupleToRemove.ifPresent(fetchers::remove);
+                    if (fetchers.isEmpty()) {
+                        dataFetchers.remove(name);
+                    }
+                    snapshot = snapshot.next(dataFetchers);
                 }
             }
         }
     }
+
+    @Reference(
+            service = FetcherBulkhead.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC)
+    private synchronized void bindFetcherBulkhead(FetcherBulkhead bulkhead) {
+        bulkheads = with(bulkheads, bulkhead.getName(), bulkhead);
+    }
+
+    @SuppressWarnings("unused")
+    private synchronized void unbindFetcherBulkhead(FetcherBulkhead bulkhead) {
+        bulkheads = without(bulkheads, bulkhead.getName(), bulkhead);
+    }
+
+    @Reference(
+            service = FetcherCircuitBreaker.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC)
+    private synchronized void bindFetcherCircuitBreaker(FetcherCircuitBreaker circuitBreaker) {
+        circuitBreakers = with(circuitBreakers, circuitBreaker.getName(), circuitBreaker);
+    }
+
+    @SuppressWarnings("unused")
+    private synchronized void unbindFetcherCircuitBreaker(FetcherCircuitBreaker circuitBreaker) {
+        circuitBreakers = without(circuitBreakers, circuitBreaker.getName(), circuitBreaker);
+    }
+
+    @Reference(
+            service = FetcherHedging.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC)
+    private synchronized void bindFetcherHedging(FetcherHedging hedging) {
+        hedgings = with(hedgings, hedging.getName(), hedging);
+    }
+
+    @SuppressWarnings("unused")
+    private synchronized void unbindFetcherHedging(FetcherHedging hedging) {
+        hedgings = without(hedgings, hedging.getName(), hedging);
+    }
+
+    /** @return a copy of the map of fetcher policies, with the one for the named fetcher replaced */
+    private static <T> Map<String, T> with(Map<String, T> policies, String name, T policy) {
+        final Map<String, T> copy = new HashMap<>(policies);
+        if (copy.put(name, policy) != null) {
+            LOGGER.warn(
+                    "More than one {} is configured for SlingDataFetcher {}, using the last one",
+                    policy.getClass().getSimpleName(),
+                    name);
+        }
+        return copy;
+    }
+
+    /** @return a copy of the map of fetcher policies, without the one for the named fetcher */
+    private static <T> Map<String, T> without(Map<String, T> policies, String name, T policy) {
+        final Map<String, T> copy = new HashMap<>(policies);
+        copy.remove(name, policy);
+        return copy;
+    }
 }
@@ -18,28 +18,88 @@
  */
 package org.apache.sling.graphql.core.engine;
 
+import java.util.concurrent.Callable;
+
+import graphql.GraphQLError;
+import graphql.execution.DataFetcherResult;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.jetbrains.annotations.Nullable;
 
-/** Wraps a SlingDataFetcher to make it usable by graphql-java */
-class SlingDataFetcherWrapper<T> implements DataFetcher<T> {
+/** Wraps a SlingDataFetcher to make it usable by graphql-java. Once the
+ *  query is cancelled, for example because its deadline has passed, the
+ *  fetcher isn't called anymore and the field is left empty. If a circuit
+ *  breaker, a bulkhead or hedging is configured for the fetcher, it's
+ *  invoked through them in that order: the circuit breaker counts the
+ *  bulkhead's rejections as failures, and a hedged invocation holds a
+ *  single bulkhead permit. Degradable fields are left empty as well, without
+ *  calling the fetcher, if the query started while the instance was
+ *  overloaded. Fetchers which are configured to run in parallel are invoked,
+ *  with their policies, on the threads of their parallel execution.
+ */
+class SlingDataFetcherWrapper<T> implements DataFetcher<Object> {
 
     private final SlingDataFetcher<T> fetcher;
     private final Resource currentResource;
     private final String options;
     private final String source;
+    private final FetcherBulkhead bulkhead;
+    private final FetcherCircuitBreaker circuitBreaker;
+    private final FetcherHedging hedging;
+    private final boolean degradable;
+    private final ParallelExecution parallelExecution;
 
-    SlingDataFetcherWrapper(SlingDataFetcher<T> fetcher, Resource currentResource, String options, String source) {
+    SlingDataFetcherWrapper(
+            SlingDataFetcher<T> fetcher,
+            Resource currentResource,
+            String options,
+            String source,
+            @Nullable FetcherBulkhead bulkhead,
+            @Nullable FetcherCircuitBreaker circuitBreaker,
+            @Nullable FetcherHedging hedging,
+            boolean degradable,
+            @Nullable ParallelExecution parallelExecution) {
         this.fetcher = fetcher;
         this.currentResource = currentResource;
         this.options = options;
         this.source = source;
+        this.bulkhead = bulkhead;
+        this.circuitBreaker = circuitBreaker;
+        this.hedging = hedging;
+        this.degradable = degradable;
+        this.parallelExecution = parallelExecution;
     }
 
     @Override
-    public T get(DataFetchingEnvironment environment) throws Exception {
-        return fetcher.get(new DataFetchingEnvironmentWrapper(environment, currentResource, options, source));
+    public Object get(DataFetchingEnvironment environment) throws Exception {
+        final QueryCancellation cancellation = QueryCancellation.of(environment);
+        if (cancellation != null && cancellation.isCancelled()) {
+            final GraphQLError error = cancellation.skipped(environment);
+            final DataFetcherResult.Builder<T> result = DataFetcherResult.newResult();
+            return error == null ? result.build() : result.error(error).build();
+        }
+        if (degradable) {
+            final FieldDegradation degradation = FieldDegradation.of(environment);
+            if (degradation != null) {
+                return degradation.skipped(environment);
+            }
+        }
+        final DataFetchingEnvironmentWrapper env =
+                new DataFetchingEnvironmentWrapper(environment, currentResource, options, source);
+        final Callable<Object> call =
+                hedging == null ? () -> fetcher.get(env) : () -> hedging.invoke(() -> fetcher.get(env));
+        final Callable<Object> invocation = bulkhead == null ? call : () -> bulkhead.invoke(call, environment);
+        final Callable<Object> guarded = circuitBreaker == null
+                ? invocation
+                : () -> circuitBreaker.invoke(invocation, environment, currentResource);
+        if (parallelExecution != null) {
+            final ParallelExecution.Query query = parallelExecution.queryOf(environment);
+            if (query != null) {
+                return query.invoke(guarded);
+            }
+        }
+        return guarded.call();
     }
 }
@@ -28,6 +28,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.graphql.api.SlingTypeResolver;
 import org.apache.sling.graphql.core.osgi.ServiceReferenceObjectTuple;
+import org.apache.sling.graphql.core.osgi.ServiceSnapshot;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.ServiceReference;
@@ -51,6 +52,9 @@ public class SlingTypeResolverSelector {
     private final Map<String, TreeSet<ServiceReferenceObjectTuple<SlingTypeResolver<Object>>>> typeResolvers =
             new HashMap<>();
 
+    /** Published on bind and unbind, so that lookups are lock-free */
+    private volatile ServiceSnapshot<SlingTypeResolver<Object>> snapshot = ServiceSnapshot.empty();
+
     /**
      * Resolvers which have a name starting with this prefix must be
      * under the {#link RESERVED_PACKAGE_PREFIX} package.
@@ -69,11 +73,7 @@ public class SlingTypeResolverSelector {
      */
     @Nullable
     public SlingTypeResolver<Object> getSlingTypeResolver(@NotNull String name) {
-        TreeSet<ServiceReferenceObjectTuple<SlingTypeResolver<Object>>> resolvers = typeResolvers.get(name);
-        if (resolvers != null && !resolvers.isEmpty()) {
-            return resolvers.last().getServiceObject();
-        }
-        return null;
+        return snapshot.get(name);
     }
 
     private boolean hasValidName(
@@ -129,6 +129,7 @@ public class SlingTypeResolverSelector {
                 TreeSet<ServiceReferenceObjectTuple<SlingTypeResolver<Object>>> resolvers =
                         typeResolvers.computeIfAbsent(name, key -> new TreeSet<>());
                 resolvers.add(new ServiceReferenceObjectTuple<>(reference, slingTypeResolver));
+                snapshot = snapshot.next(typeResolvers);
             }
         }
     }
@@ -144,6 +145,10 @@ public class SlingTypeResolverSelector {
                             .filter(tuple -> reference.equals(tuple.getServiceReference()))
                             .findFirst();
                     tupleToRemove.ifPresent(resolvers::remove);
+                    if (resolvers.isEmpty()) {
+                        typeResolvers.remove(name);
+                    }
+                    snapshot = snapshot.next(typeResolvers);
                 }
             }
         }
@@ -18,14 +18,32 @@
  */
 package org.apache.sling.graphql.core.engine;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import graphql.TypeResolutionEnvironment;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.TypeResolver;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.graphql.api.SlingGraphQLException;
 import org.apache.sling.graphql.api.SlingTypeResolver;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * Wraps a SlingTypeResolver to make it usable by graphql-java
+ *
+ * If the resolver directive maps Java classes or resource types to object types,
+ * those are looked up first and the results cached, so that the SlingTypeResolver
+ * is only called for objects which are not mapped.
  */
 class SlingTypeResolverWrapper implements TypeResolver {
 
@@ -33,21 +51,116 @@ class SlingTypeResolverWrapper implements TypeResolver {
     private final Resource currentResource;
     private final String options;
     private final String source;
+    private final Map<String, String> types;
+    private final ConcurrentMap<Class<?>, Optional<GraphQLObjectType>> classTypes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Optional<GraphQLObjectType>> resourceTypes = new ConcurrentHashMap<>();
 
     SlingTypeResolverWrapper(
             SlingTypeResolver<Object> resolver, Resource currentResource, String options, String source) {
+        this(resolver, currentResource, options, source, Collections.emptyMap());
+    }
+
+    SlingTypeResolverWrapper(
+            SlingTypeResolver<Object> resolver,
+            Resource currentResource,
+            String options,
+            String source,
+            Map<String, String> types) {
         this.resolver = resolver;
         this.currentResource = currentResource;
         this.options = options;
         this.source = source;
+        this.types = types;
     }
 
     @Override
     public GraphQLObjectType getType(TypeResolutionEnvironment environment) {
+        if (!types.isEmpty()) {
+            final GraphQLObjectType mapped = getMappedType(environment);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
         Object r = resolver.getType(new TypeResolverEnvironmentWrapper(environment, currentResource, options, source));
         if (r instanceof GraphQLObjectType) {
             return (GraphQLObjectType) r;
         }
         return null;
     }
+
+    private GraphQLObjectType getMappedType(TypeResolutionEnvironment environment) {
+        final Object object = environment.getObject();
+        if (object == null) {
+            return null;
+        }
+        if (object instanceof Resource) {
+            final String resourceType = ((Resource) object).getResourceType();
+            if (resourceType != null) {
+                Optional<GraphQLObjectType> type = resourceTypes.get(resourceType);
+                if (type == null) {
+                    type = Optional.ofNullable(getObjectType(environment, types.get(resourceType)));
+                    resourceTypes.putIfAbsent(resourceType, type);
+                }
+                if (type.isPresent()) {
+                    return type.get();
+                }
+            }
+        }
+        Optional<GraphQLObjectType> type = classTypes.get(object.getClass());
+        if (type == null) {
+            type = Optional.ofNullable(getObjectType(environment, getTypeName(object.getClass())));
+            classTypes.putIfAbsent(object.getClass(), type);
+        }
+        return type.orElse(null);
+    }
+
+    private static GraphQLObjectType getObjectType(TypeResolutionEnvironment environment, String name) {
+        return name == null ? null : environment.getSchema().getObjectType(name);
+    }
+
+    /** Finds the mapping of the supplied class, its superclasses or interfaces, closest first */
+    private String getTypeName(Class<?> clazz) {
+        final Deque<Class<?>> toVisit = new ArrayDeque<>();
+        final Set<Class<?>> visited = new HashSet<>();
+        toVisit.add(clazz);
+        while (!toVisit.isEmpty()) {
+            final Class<?> c = toVisit.poll();
+            if (!visited.add(c)) {
+                continue;
+            }
+            final String name = types.get(c.getName());
+            if (name != null) {
+                return name;
+            }
+            if (c.getSuperclass() != null) {
+                toVisit.add(c.getSuperclass());
+            }
+            Collections.addAll(toVisit, c.getInterfaces());
+        }
+        return null;
+    }
+
+    /**
+     * Parses the types argument of the resolver directive, a comma-separated
+     * list of {@code <class name or resource type>=<object type name>} entries.
+     */
+    static @NotNull Map<String, String> parseTypes(String types) {
+        if (StringUtils.isBlank(types)) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> result = new LinkedHashMap<>();
+        for (String entry : types.split(",")) {
+            if (StringUtils.isBlank(entry)) {
+                continue;
+            }
+            final String[] parts = entry.split("=");
+            if (parts.length != 2 || StringUtils.isAnyBlank(parts[0], parts[1])) {
+                throw new SlingGraphQLException(String.format(
+                        "Invalid type resolver mapping '%s', expected <class name or resource type>=<type name>",
+                        entry.trim()));
+            }
+            result.put(parts[0].trim(), parts[1].trim());
+        }
+        return Collections.unmodifiableMap(result);
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.graphql.core.hash.SHA256Hasher;
+import org.apache.sling.graphql.core.util.LogSanitizer;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the executions which take longer than a threshold, as a single line
+ * with their timing breakdown.
+ *
+ * The lines are built and written by a background thread, so that logging never
+ * adds latency to the request. If that thread can't keep up, the excess lines are
+ * dropped and counted in the next line which is written.
+ */
+class SlowQueryLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowQueryLog.class);
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private static final LogSanitizer cleanLog = new LogSanitizer();
+
+    private final long thresholdNanos;
+    private final int topFetchers;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong dropped = new AtomicLong();
+
+    SlowQueryLog(long thresholdMillis, int topFetchers) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.topFetchers = Math.max(0, topFetchers);
+        executor = new ThreadPoolExecutor(
+                1,
+                1,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    final Thread t = new Thread(r, "sling-graphql-slow-query-log");
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, e) -> dropped.incrementAndGet());
+    }
+
+    /** Logs the execution traced by the supplied instrumentation if it took longer than the threshold */
+    void logIfSlow(
+            @NotNull TracingInstrumentation tracing,
+            @NotNull String query,
+            @NotNull Resource queryResource,
+            @NotNull String[] selectors) {
+        final long duration = tracing.getDuration();
+        if (duration < thresholdNanos) {
+            return;
+        }
+        final String resourceType = queryResource.getResourceType();
+        final String selectorsString = Arrays.toString(selectors);
+        executor.execute(() -> log(tracing, duration, query, resourceType, selectorsString));
+    }
+
+    /** @return how many of the slowest SlingDataFetcher invocations are logged */
+    int getTopFetchers() {
+        return topFetchers;
+    }
+
+    void close() {
+        executor.shutdown();
+    }
+
+    private void log(
+            TracingInstrumentation tracing, long duration, String query, String resourceType, String selectors) {
+        if (!LOGGER.isWarnEnabled()) {
+            return;
+        }
+        final StringBuilder sb = new StringBuilder("Slow GraphQL query:");
+        sb.append(" duration=").append(millis(duration)).append("ms");
+        sb.append(" threshold=").append(millis(thresholdNanos)).append("ms");
+        sb.append(" operation=").append(cleanLog.sanitize(String.valueOf(tracing.getOperationName())));
+        sb.append(" queryHash=").append(SHA256Hasher.getHash(query));
+        sb.append(" resourceType=").append(cleanLog.sanitize(String.valueOf(resourceType)));
+        sb.append(" selectors=").append(cleanLog.sanitize(selectors));
+        sb.append(" schema=")
+                .append(millis(tracing.getSchema().getDuration()))
+                .append("ms(")
+                .append(tracing.isSchemaCacheHit() ? "hit" : "miss")
+                .append(")");
+        sb.append(" parsing=")
+                .append(millis(tracing.getParsing().getDuration()))
+                .append("ms");
+        sb.append(" validation=")
+                .append(millis(tracing.getValidation().getDuration()))
+                .append("ms");
+        sb.append(" execution=")
+                .append(millis(tracing.getExecution().getDuration()))
+                .append("ms");
+        final List<TracingInstrumentation.FieldTiming> fields = tracing.getSlowestFetchers();
+        sb.append(" slowestFetchers=[");
+        for (int i = 0; i < Math.min(topFetchers, fields.size()); i++) {
+            final TracingInstrumentation.FieldTiming field = fields.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(field.fetcher)
+                    .append('@')
+                    .append(cleanLog.sanitize(pathToString(field.path)))
+                    .append('=')
+                    .append(millis(field.duration))
+                    .append("ms");
+        }
+        sb.append("]");
+        final long droppedLines = dropped.getAndSet(0);
+        if (droppedLines > 0) {
+            sb.append(" dropped=").append(droppedLines);
+        }
+        LOGGER.warn(sb.toString());
+    }
+
+    private static String pathToString(List<Object> path) {
+        final StringBuilder sb = new StringBuilder();
+        for (Object segment : path) {
+            if (segment instanceof Integer) {
+                sb.append('[').append(segment).append(']');
+            } else {
+                if (sb.length() > 0) {
+                    sb.append('/');
+                }
+                sb.append(segment);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** @return the supplied duration in milliseconds, with one decimal */
+    private static String millis(long nanos) {
+        if (nanos < 0) {
+            return "-";
+        }
+        return String.valueOf(Math.round(nanos / 100_000.0) / 10.0);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import graphql.ExecutionResult;
+import graphql.execution.ExecutionStepInfo;
+import graphql.execution.instrumentation.FieldFetchingInstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationValidationParameters;
+import graphql.incremental.IncrementalExecutionResult;
+import graphql.incremental.IncrementalExecutionResultImpl;
+import graphql.language.Argument;
+import graphql.language.Directive;
+import graphql.language.Document;
+import graphql.language.FieldDefinition;
+import graphql.language.StringValue;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.validation.ValidationError;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects the timings of a single execution. All times are in nanoseconds,
+ * with offsets relative to the start of the execution, which includes
+ * preparing the schema.
+ *
+ * A detailed trace includes all fields and is added to the {@code extensions}
+ * of the result under the {@link #EXTENSION_KEY} key, otherwise only the fields
+ * served by a SlingDataFetcher are timed, for the slow query log. That log only
+ * needs the slowest of them, which are kept in a bounded heap.
+ */
+class TracingInstrumentation extends SimplePerformantInstrumentation {
+
+    static final String EXTENSION_KEY = "trace";
+    static final int VERSION = 1;
+
+    private static final Comparator<FieldTiming> BY_DURATION = Comparator.comparingLong(f -> f.duration);
+
+    private final boolean detailed;
+    private final int slowestCount;
+    private final long start = System.nanoTime();
+    private final Phase schema = new Phase();
+    private final Phase parsing = new Phase();
+    private final Phase validation = new Phase();
+    private final Phase execution = new Phase();
+    private final ConcurrentLinkedQueue<FieldTiming> fields = new ConcurrentLinkedQueue<>();
+    /** The slowest SlingDataFetcher invocations, fastest first, guarded by itself */
+    private final PriorityQueue<FieldTiming> slowest;
+    /** Fetcher names by field, "" for fields which don't use a SlingDataFetcher */
+    private final Map<GraphQLFieldDefinition, String> fetcherNames = new ConcurrentHashMap<>();
+
+    private volatile boolean schemaCacheHit;
+    private volatile String operationName;
+    private volatile long end;
+
+    /**
+     * @param detailed whether to time all fields, for the {@code extensions} of the result
+     * @param slowestCount how many of the slowest SlingDataFetcher invocations to keep
+     */
+    TracingInstrumentation(boolean detailed, int slowestCount) {
+        this.detailed = detailed;
+        this.slowestCount = Math.max(0, slowestCount);
+        this.slowest = new PriorityQueue<>(this.slowestCount + 1, BY_DURATION);
+    }
+
+    /** Timing of one phase of the execution, written by a single thread */
+    static final class Phase {
+        private volatile long startOffset = -1;
+        private volatile long duration = -1;
+
+        long getDuration() {
+            return duration;
+        }
+
+        private Map<String, Object> toMap() {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            if (startOffset >= 0) {
+                result.put("startOffset", startOffset);
+                result.put("duration", duration);
+            }
+            return result;
+        }
+    }
+
+    /** Timing of a field fetch */
+    static final class FieldTiming {
+        final List<Object> path;
+        final String parentType;
+        final String fieldName;
+        final String fetcher;
+        final long startOffset;
+        final long duration;
+
+        private FieldTiming(
+                List<Object> path,
+                String parentType,
+                String fieldName,
+                String fetcher,
+                long startOffset,
+                long duration) {
+            this.path = path;
+            this.parentType = parentType;
+            this.fieldName = fieldName;
+            this.fetcher = fetcher;
+            this.startOffset = startOffset;
+            this.duration = duration;
+        }
+
+        private Map<String, Object> toMap() {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("path", path);
+            result.put("parentType", parentType);
+            result.put("fieldName", fieldName);
+            if (!fetcher.isEmpty()) {
+                result.put("fetcher", fetcher);
+            }
+            result.put("startOffset", startOffset);
+            result.put("duration", duration);
+            return result;
+        }
+    }
+
+    void schemaCache(boolean hit) {
+        schemaCacheHit = hit;
+    }
+
+    void schemaPrepared(long schemaStart) {
+        complete(schema, schemaStart);
+    }
+
+    Phase getSchema() {
+        return schema;
+    }
+
+    boolean isSchemaCacheHit() {
+        return schemaCacheHit;
+    }
+
+    Phase getParsing() {
+        return parsing;
+    }
+
+    Phase getValidation() {
+        return validation;
+    }
+
+    Phase getExecution() {
+        return execution;
+    }
+
+    @Nullable
+    String getOperationName() {
+        return operationName;
+    }
+
+    /** @return the timed fields, in the order in which their values were fetched */
+    List<FieldTiming> getFields() {
+        return new ArrayList<>(fields);
+    }
+
+    /** @return the slowest SlingDataFetcher invocations, slowest first */
+    List<FieldTiming> getSlowestFetchers() {
+        final List<FieldTiming> result;
+        synchronized (slowest) {
+            result = new ArrayList<>(slowest);
+        }
+        result.sort(BY_DURATION.reversed());
+        return result;
+    }
+
+    /** @return the duration of the execution, until its result was available */
+    long getDuration() {
+        return (end > 0 ? end : System.nanoTime()) - start;
+    }
+
+    /** Ends an incremental execution once its subsequent payloads were delivered, which extends its duration */
+    void incrementalExecutionEnded() {
+        end = System.nanoTime();
+    }
+
+    @Override
+    public InstrumentationContext<Document> beginParse(
+            InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        return timing(parsing);
+    }
+
+    @Override
+    public InstrumentationContext<List<ValidationError>> beginValidation(
+            InstrumentationValidationParameters parameters, InstrumentationState state) {
+        return timing(validation);
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(
+            InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+        operationName =
+                parameters.getExecutionContext().getOperationDefinition().getName();
+        return timing(execution);
+    }
+
+    @Override
+    public @NotNull FieldFetchingInstrumentationContext beginFieldFetching(
+            InstrumentationFieldFetchParameters parameters, InstrumentationState state) {
+        final GraphQLFieldDefinition field = parameters.getField();
+        final String fetcher = fetcherNames.computeIfAbsent(field, TracingInstrumentation::getFetcherName);
+        final boolean slow = slowestCount > 0 && !fetcher.isEmpty();
+        if (!detailed && !slow) {
+            return FieldFetchingInstrumentationContext.NOOP;
+        }
+        final long fieldStart = System.nanoTime();
+        return FieldFetchingInstrumentationContext.adapter(SimpleInstrumentationContext.whenCompleted((v, t) -> {
+            final long duration = System.nanoTime() - fieldStart;
+            final ExecutionStepInfo stepInfo = parameters.getExecutionStepInfo();
+            final FieldTiming timing = detailed ? timing(stepInfo, field, fetcher, fieldStart, duration) : null;
+            if (timing != null) {
+                fields.add(timing);
+            }
+            if (slow) {
+                synchronized (slowest) {
+                    if (slowest.size() < slowestCount || duration > slowest.peek().duration) {
+                        slowest.add(timing != null ? timing : timing(stepInfo, field, fetcher, fieldStart, duration));
+                        if (slowest.size() > slowestCount) {
+                            slowest.poll();
+                        }
+                    }
+                }
+            }
+        }));
+    }
+
+    private FieldTiming timing(
+            ExecutionStepInfo stepInfo, GraphQLFieldDefinition field, String fetcher, long fieldStart, long duration) {
+        return new FieldTiming(
+                stepInfo.getPath().toList(),
+                stepInfo.getObjectType().getName(),
+                field.getName(),
+                fetcher,
+                fieldStart - start,
+                duration);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<ExecutionResult> instrumentExecutionResult(
+            ExecutionResult executionResult,
+            InstrumentationExecutionParameters parameters,
+            InstrumentationState state) {
+        end = System.nanoTime();
+        if (!detailed) {
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        if (executionResult instanceof IncrementalExecutionResult) {
+            // transform() doesn't keep the publisher of the subsequent payloads
+            return CompletableFuture.completedFuture(new IncrementalExecutionResultImpl.Builder()
+                    .from((IncrementalExecutionResult) executionResult)
+                    .addExtension(EXTENSION_KEY, toMap())
+                    .build());
+        }
+        return CompletableFuture.completedFuture(
+                executionResult.transform(builder -> builder.addExtension(EXTENSION_KEY, toMap())));
+    }
+
+    Map<String, Object> toMap() {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", VERSION);
+        result.put("duration", getDuration());
+        final Map<String, Object> schemaMap = new LinkedHashMap<>();
+        schemaMap.put("cache", schemaCacheHit ? "hit" : "miss");
+        schemaMap.putAll(schema.toMap());
+        result.put("schema", schemaMap);
+        result.put("parsing", parsing.toMap());
+        result.put("validation", validation.toMap());
+        result.put("execution", execution.toMap());
+        final List<Map<String, Object>> fieldMaps = new ArrayList<>();
+        for (FieldTiming field : fields) {
+            fieldMaps.add(field.toMap());
+        }
+        result.put("fields", fieldMaps);
+        return result;
+    }
+
+    private void complete(Phase phase, long phaseStart) {
+        final long now = System.nanoTime();
+        phase.startOffset = phaseStart - start;
+        phase.duration = now - phaseStart;
+    }
+
+    private <T> InstrumentationContext<T> timing(Phase phase) {
+        final long phaseStart = System.nanoTime();
+        return SimpleInstrumentationContext.whenCompleted((v, t) -> complete(phase, phaseStart));
+    }
+
+    private static String getFetcherName(GraphQLFieldDefinition field) {
+        final FieldDefinition definition = field.getDefinition();
+        if (definition != null) {
+            for (Directive d : definition.getDirectives()) {
+                if (DefaultQueryExecutor.FETCHER_DIRECTIVE.equals(d.getName())) {
+                    final Argument a = d.getArgument(DefaultQueryExecutor.FETCHER_NAME);
+                    if (a != null && a.getValue() instanceof StringValue) {
+                        return ((StringValue) a.getValue()).getValue();
+                    }
+                }
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.osgi;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Immutable view of named services, which maps each name to its highest
+ *  ranked service. Meant to be published through a volatile field when the
+ *  services change, so that lookups don't need any locking.
+ */
+public final class ServiceSnapshot<T> {
+
+    private static final ServiceSnapshot<?> EMPTY = new ServiceSnapshot<>(Collections.emptyMap());
+
+    private final Map<String, T> services;
+
+    private ServiceSnapshot(@NotNull Map<String, T> services) {
+        this.services = services;
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    public static <T> ServiceSnapshot<T> empty() {
+        return (ServiceSnapshot<T>) EMPTY;
+    }
+
+    /** @return a snapshot of the highest ranked service of each of the supplied sets */
+    @NotNull
+    public ServiceSnapshot<T> next(@NotNull Map<String, ? extends SortedSet<ServiceReferenceObjectTuple<T>>> ranked) {
+        return next(ranked, (name, service) -> service);
+    }
+
+    /** @return a snapshot of the objects built by the supplied function from the highest ranked service of each
+     *  of the supplied sets */
+    @NotNull
+    public <S> ServiceSnapshot<T> next(
+            @NotNull Map<String, ? extends SortedSet<ServiceReferenceObjectTuple<S>>> ranked,
+            @NotNull BiFunction<String, S, T> builder) {
+        final Map<String, T> highestRanked = new HashMap<>();
+        ranked.forEach((name, tuples) -> {
+            if (!tuples.isEmpty()) {
+                highestRanked.put(name, builder.apply(name, tuples.last().getServiceObject()));
+            }
+        });
+        return new ServiceSnapshot<>(Collections.unmodifiableMap(highestRanked));
+    }
+
+    /** @return the highest ranked service registered with the supplied name, or null if none */
+    @Nullable
+    public T get(@NotNull String name) {
+        return services.get(name);
+    }
+}
@@ -32,6 +32,10 @@ class SlingCoercingWrapper implements Coercing<Object, Object> {
         converter = c;
     }
 
+    SlingScalarConverter<Object, Object> getConverter() {
+        return converter;
+    }
+
     @Override
     public Object serialize(Object dataFetcherResult) {
         try {
@@ -18,12 +18,12 @@
  */
 package org.apache.sling.graphql.core.scalars;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 import graphql.language.ScalarTypeDefinition;
 import graphql.schema.GraphQLScalarType;
@@ -32,6 +32,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.graphql.api.SlingGraphQLException;
 import org.apache.sling.graphql.api.SlingScalarConverter;
 import org.apache.sling.graphql.core.osgi.ServiceReferenceObjectTuple;
+import org.apache.sling.graphql.core.osgi.ServiceSnapshot;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.annotations.Component;
@@ -41,6 +42,9 @@ import org.osgi.service.component.annotations.ReferencePolicy;
 
 /**
  * Provides GraphQL Scalars (leaf data types) for query execution
+ *
+ * The scalar types are built when the converter services change, and
+ * published as an immutable snapshot shared by all requests.
  */
 @Component(
         service = SlingScalarsProvider.class,
@@ -53,6 +57,8 @@ public class SlingScalarsProvider {
     private final Map<String, TreeSet<ServiceReferenceObjectTuple<SlingScalarConverter<Object, Object>>>> scalars =
             new HashMap<>();
 
+    private volatile ServiceSnapshot<GraphQLScalarType> snapshot = ServiceSnapshot.empty();
+
     @Reference(
             service = SlingScalarConverter.class,
             cardinality = ReferenceCardinality.MULTIPLE,
@@ -66,6 +72,7 @@ public class SlingScalarsProvider {
                 TreeSet<ServiceReferenceObjectTuple<SlingScalarConverter<Object, Object>>> set =
                         scalars.computeIfAbsent(name, key -> new TreeSet<>());
                 set.add(new ServiceReferenceObjectTuple<>(serviceReference, scalarConverter));
+                snapshot = snapshot.next(scalars, this::getOrBuildScalar);
             }
         }
     }
@@ -82,22 +89,23 @@ public class SlingScalarsProvider {
                                     .filter(tuple -> serviceReference.equals(tuple.getServiceReference()))
                                     .findFirst();
                     tupleToRemove.ifPresent(set::remove);
+                    if (set.isEmpty()) {
+                        scalars.remove(name);
+                    }
+                    snapshot = snapshot.next(scalars, this::getOrBuildScalar);
                 }
             }
         }
     }
 
-    private GraphQLScalarType getScalar(String name) {
-        // Ignore standard scalars
-        if (ScalarInfo.isGraphqlSpecifiedScalar(name)) {
-            return null;
+    /** Reuses the current scalar type if its converter didn't change */
+    private GraphQLScalarType getOrBuildScalar(String name, SlingScalarConverter<Object, Object> converter) {
+        final GraphQLScalarType current = snapshot.get(name);
+        if (current != null
+                && current.getCoercing() instanceof SlingCoercingWrapper
+                && ((SlingCoercingWrapper) current.getCoercing()).getConverter() == converter) {
+            return current;
         }
-        TreeSet<ServiceReferenceObjectTuple<SlingScalarConverter<Object, Object>>> set = scalars.get(name);
-        if (set == null || set.isEmpty()) {
-            throw new SlingGraphQLException("SlingScalarConverter with name '" + name + "' not found");
-        }
-        SlingScalarConverter<Object, Object> converter = set.last().getServiceObject();
-
         return GraphQLScalarType.newScalar()
                 .name(name)
                 .description(converter.toString())
@@ -107,9 +115,19 @@ public class SlingScalarsProvider {
 
     public Iterable<GraphQLScalarType> getCustomScalars(Map<String, ScalarTypeDefinition> schemaScalars) {
         // Using just the names for now, not sure why we'd need the ScalarTypeDefinitions
-        return schemaScalars.keySet().stream()
-                .map(this::getScalar)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        final ServiceSnapshot<GraphQLScalarType> current = snapshot;
+        final List<GraphQLScalarType> result = new ArrayList<>(schemaScalars.size());
+        for (String name : schemaScalars.keySet()) {
+            // Ignore standard scalars
+            if (ScalarInfo.isGraphqlSpecifiedScalar(name)) {
+                continue;
+            }
+            final GraphQLScalarType scalar = current.get(name);
+            if (scalar == null) {
+                throw new SlingGraphQLException("SlingScalarConverter with name '" + name + "' not found");
+            }
+            result.add(scalar);
+        }
+        return result;
     }
 }
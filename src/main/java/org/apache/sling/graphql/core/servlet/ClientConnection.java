@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+
+/** Detects HTTP clients which disconnect while their query executes, so that
+ *  the execution can be cancelled. The servlet API has no portable way to be
+ *  notified of a disconnect, so the connection is probed by flushing a space,
+ *  which JSON parsers ignore and which is part of the preamble of a multipart
+ *  response, at most once per probe interval. Probing commits the response
+ *  status and headers, which is why it's disabled unless configured. Failures
+ *  to write the response are reported with {@link #disconnected()} as well.
+ *
+ *  The response is not thread-safe, so it's only probed when this is called
+ *  on the request thread, which created it. Calls from other threads, like
+ *  the ones of parallel or hedged data fetchers, get the last known state.
+ */
+class ClientConnection implements BooleanSupplier {
+
+    private final SlingHttpServletResponse response;
+    private final long probeIntervalNanos;
+    private final Thread requestThread;
+    private long lastProbe;
+    private volatile boolean probing;
+    private volatile boolean disconnected;
+
+    ClientConnection(@NotNull SlingHttpServletResponse response, long probeIntervalMillis) {
+        this.response = response;
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+        this.probing = probeIntervalMillis > 0;
+        this.requestThread = Thread.currentThread();
+        // queries faster than the probe interval never commit their response early
+        this.lastProbe = System.nanoTime();
+    }
+
+    /** @return true if the client is known to have disconnected */
+    @Override
+    public boolean getAsBoolean() {
+        if (!disconnected && probing && Thread.currentThread() == requestThread) {
+            probe();
+        }
+        return disconnected;
+    }
+
+    /** Stops probing, before the servlet writes the response itself */
+    synchronized void stopProbing() {
+        probing = false;
+    }
+
+    /** Records that writing the response failed */
+    void disconnected() {
+        disconnected = true;
+    }
+
+    private synchronized void probe() {
+        final long now = System.nanoTime();
+        if (!probing || now - lastProbe < probeIntervalNanos) {
+            return;
+        }
+        lastProbe = now;
+        try {
+            final PrintWriter writer = response.getWriter();
+            writer.write(' ');
+            writer.flush();
+            if (writer.checkError()) {
+                disconnected = true;
+            }
+        } catch (IOException e) {
+            disconnected = true;
+        }
+    }
+}
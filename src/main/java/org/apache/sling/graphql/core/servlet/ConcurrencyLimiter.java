@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.Nullable;
+
+/** Adaptive limit of the number of queries a servlet executes concurrently.
+ *  The limit follows an additive-increase/multiplicative-decrease scheme: it
+ *  grows by one while queries complete within the latency threshold and the
+ *  limit is actually used, and shrinks by {@link #BACKOFF_RATIO} whenever a
+ *  query takes longer. Queries beyond the limit wait in a short bounded queue,
+ *  where priority queries are served first, and are rejected if the queue is
+ *  full or their wait times out.
+ */
+class ConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final int maxQueueSize;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Condition> priorityQueue = new ArrayDeque<>();
+    private final Deque<Condition> queue = new ArrayDeque<>();
+
+    // guarded by lock, volatile to be read by the metrics
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int queued;
+
+    ConcurrencyLimiter(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            long latencyThresholdMillis,
+            int maxQueueSize,
+            long maxWaitMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.maxQueueSize = Math.max(0, maxQueueSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * @param priority true for queries which are served first when waiting, such as persisted queries
+     * @return a permit to execute a query, which must be closed when done, or null if the query is rejected
+     */
+    @Nullable
+    Permit acquire(boolean priority) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < getLimit() && priorityQueue.isEmpty() && (priority || queue.isEmpty())) {
+                return newPermit();
+            }
+            if (priorityQueue.size() + queue.size() >= maxQueueSize) {
+                return null;
+            }
+            final Condition turn = lock.newCondition();
+            final Deque<Condition> waiting = priority ? priorityQueue : queue;
+            waiting.addLast(turn);
+            queued++;
+            try {
+                long remaining = maxWaitNanos;
+                while (!(inFlight < getLimit() && isNext(turn, priority))) {
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    remaining = turn.awaitNanos(remaining);
+                }
+                return newPermit();
+            } finally {
+                waiting.remove(turn);
+                queued--;
+                signalNext();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight;
+    }
+
+    int getQueued() {
+        return queued;
+    }
+
+    private boolean isNext(Condition turn, boolean priority) {
+        return priority ? priorityQueue.peekFirst() == turn : priorityQueue.isEmpty() && queue.peekFirst() == turn;
+    }
+
+    private Permit newPermit() {
+        inFlight++;
+        return new Permit();
+    }
+
+    private void release(long latencyNanos) {
+        lock.lock();
+        try {
+            if (latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (inFlight * 2 >= getLimit()) {
+                // only grow while the current limit is used, so that it doesn't drift up when idle
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            inFlight--;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalNext() {
+        if (inFlight >= getLimit()) {
+            return;
+        }
+        final Condition next = priorityQueue.isEmpty() ? queue.peekFirst() : priorityQueue.peekFirst();
+        if (next != null) {
+            next.signal();
+        }
+    }
+
+    /** Allows a single query to execute, and measures its latency */
+    class Permit implements AutoCloseable {
+        private final long start = System.nanoTime();
+        private boolean released;
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.api.wrappers.IteratorWrapper;
+import org.apache.sling.api.wrappers.ResourceResolverWrapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Records the paths of all the resources which are read through it, or
+ *  through the resources it returns, so that a query result can be related
+ *  to the resources it depends on.
+ */
+class DependencyTrackingResourceResolver extends ResourceResolverWrapper {
+
+    private final ResourceResolver resolver;
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+    DependencyTrackingResourceResolver(@NotNull ResourceResolver resolver) {
+        super(resolver);
+        this.resolver = resolver;
+    }
+
+    /** @return the paths of the resources read so far, sorted */
+    @NotNull
+    Set<String> getPaths() {
+        return Collections.unmodifiableSet(new TreeSet<>(paths));
+    }
+
+    /** Returns a resource which records its path and the paths of the resources
+     *  that are reached from it.
+     */
+    @Nullable
+    Resource track(@Nullable Resource resource) {
+        if (resource == null) {
+            return null;
+        }
+        if (resource instanceof TrackedResource && ((TrackedResource) resource).tracker == this) {
+            return resource;
+        }
+        paths.add(resource.getPath());
+        return new TrackedResource(resource, this);
+    }
+
+    private Iterator<Resource> track(Iterator<Resource> resources) {
+        return new IteratorWrapper<Resource>(resources) {
+            @Override
+            public Resource next() {
+                return track(super.next());
+            }
+        };
+    }
+
+    private static Resource unwrap(Resource resource) {
+        if (resource instanceof TrackedResource) {
+            return ((TrackedResource) resource).getResource();
+        }
+        return resource;
+    }
+
+    @Override
+    public Resource getResource(String path) {
+        return track(resolver.getResource(path));
+    }
+
+    @Override
+    public Resource getResource(Resource base, String path) {
+        return track(resolver.getResource(unwrap(base), path));
+    }
+
+    @Override
+    public Resource resolve(String absPath) {
+        return track(resolver.resolve(absPath));
+    }
+
+    @Override
+    public Resource resolve(HttpServletRequest request, String absPath) {
+        return track(resolver.resolve(request, absPath));
+    }
+
+    @Override
+    public Resource resolve(HttpServletRequest request) {
+        return track(resolver.resolve(request));
+    }
+
+    @Override
+    public Resource getParent(Resource child) {
+        return track(resolver.getParent(unwrap(child)));
+    }
+
+    @Override
+    public Iterator<Resource> listChildren(Resource parent) {
+        paths.add(parent.getPath());
+        return track(resolver.listChildren(unwrap(parent)));
+    }
+
+    @Override
+    public Iterable<Resource> getChildren(Resource parent) {
+        return () -> listChildren(parent);
+    }
+
+    @Override
+    public Iterator<Resource> findResources(String query, String language) {
+        return track(resolver.findResources(query, language));
+    }
+
+    private static class TrackedResource extends ResourceWrapper {
+
+        private final DependencyTrackingResourceResolver tracker;
+
+        TrackedResource(@NotNull Resource resource, @NotNull DependencyTrackingResourceResolver tracker) {
+            super(resource);
+            this.tracker = tracker;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return tracker;
+        }
+
+        @Override
+        public Resource getParent() {
+            return tracker.getParent(this);
+        }
+
+        @Override
+        public Resource getChild(String relPath) {
+            return tracker.getResource(this, relPath);
+        }
+
+        @Override
+        public Iterator<Resource> listChildren() {
+            return tracker.listChildren(this);
+        }
+
+        @Override
+        public Iterable<Resource> getChildren() {
+            return tracker.getChildren(this);
+        }
+    }
+}
@@ -22,8 +22,16 @@ import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,9 +50,12 @@ import org.apache.sling.commons.metrics.MetricsService;
 import org.apache.sling.commons.metrics.Timer;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.graphql.api.cache.GraphQLCacheProvider;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
 import org.apache.sling.graphql.api.engine.QueryExecutor;
 import org.apache.sling.graphql.api.engine.ValidationResult;
 import org.jetbrains.annotations.NotNull;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
@@ -67,6 +78,16 @@ import org.slf4j.LoggerFactory;
  *  the "traditional" GraphQL single-endpoint mode, or on specific resource
  *  types and selectors to turn specific Sling Resources into GraphQL
  *  endpoints.
+ *
+ *  Clients which send an {@code Accept: multipart/mixed} header get the
+ *  payloads of fragments marked with the {@code @defer} directive as
+ *  separate parts of a multipart response, written as soon as the
+ *  corresponding data is available.
+ *
+ *  When enabled, clients which send an {@code Accept: text/event-stream}
+ *  header for a query marked with the {@code @live} directive get the
+ *  query's result as Server-Sent Events, pushed again whenever the
+ *  resources read while executing the query change.
  */
 @Component(
         service = Servlet.class,
@@ -81,6 +102,12 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
 
     public static final String P_QUERY = "query";
 
+    static final String MIME_TYPE_MULTIPART_MIXED = "multipart/mixed";
+    static final String MULTIPART_BOUNDARY = "-";
+    static final String MIME_TYPE_EVENT_STREAM = "text/event-stream";
+    static final String TRACE_HEADER = "X-Sling-GraphQL-Trace";
+    static final String TIMEOUT_HEADER = "X-Sling-GraphQL-Timeout";
+
     @ObjectClassDefinition(
             name = "Apache Sling GraphQL Servlet",
             description = "Servlet that implements GraphQL endpoints")
@@ -111,6 +138,99 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
                 min = "0",
                 type = AttributeType.INTEGER)
         int cache$_$control_max$_$age() default 60;
+
+        @AttributeDefinition(
+                name = "Live queries maximum concurrency",
+                description =
+                        "The maximum number of live queries (queries marked with the @live directive and requested"
+                                + " as text/event-stream) which can run at the same time. Each live query holds a request thread"
+                                + " while it runs. 0 disables live queries.",
+                min = "0",
+                type = AttributeType.INTEGER)
+        int liveQueries_maxConcurrent() default 0;
+
+        @AttributeDefinition(
+                name = "Live queries maximum duration",
+                description = "The maximum amount of time a live query runs before its event stream is completed (in"
+                        + " seconds). Clients are expected to reconnect if they still need updates.",
+                min = "1",
+                type = AttributeType.INTEGER)
+        int liveQueries_maxDuration() default 300;
+
+        @AttributeDefinition(
+                name = "Live queries heartbeat interval",
+                description = "The interval at which a comment is written to idle event streams, to keep the connection"
+                        + " open and detect disconnected clients (in seconds).",
+                min = "1",
+                type = AttributeType.INTEGER)
+        int liveQueries_heartbeatInterval() default 15;
+
+        @AttributeDefinition(
+                name = "Users allowed to trace queries",
+                description = "The IDs of the users whose requests can add a timing trace of the query execution to the"
+                        + " extensions of the result, by sending a " + TRACE_HEADER + ": true header. Empty disables"
+                        + " tracing.")
+        String[] trace_allowedUsers() default {};
+
+        @AttributeDefinition(
+                name = "Client disconnect probe interval",
+                description = "The interval at which the connection of the client is probed while its query executes,"
+                        + " to stop the execution once the client has disconnected (in milliseconds). Probing writes"
+                        + " whitespace ahead of the result, which commits the response status and headers. 0 disables"
+                        + " probing, disconnects are then only detected when writing incremental responses.",
+                min = "0",
+                type = AttributeType.INTEGER)
+        int clientDisconnect_probeInterval() default 0;
+
+        @AttributeDefinition(
+                name = "Concurrency limit maximum",
+                description = "The maximum number of queries this servlet executes at the same time. The actual limit"
+                        + " adapts to the observed latency, between 1 and this value. Queries beyond the limit wait in a"
+                        + " short queue, persisted queries first, and are rejected with a 503 status if it's full. Live"
+                        + " queries aren't limited. 0 disables the limit.",
+                min = "0",
+                type = AttributeType.INTEGER)
+        int concurrencyLimit_max() default 0;
+
+        @AttributeDefinition(
+                name = "Concurrency limit initial value",
+                description = "The concurrency limit used until enough queries have been observed to adapt it.",
+                min = "1",
+                type = AttributeType.INTEGER)
+        int concurrencyLimit_initial() default 20;
+
+        @AttributeDefinition(
+                name = "Concurrency limit latency threshold",
+                description = "Queries which take longer than this (in milliseconds) decrease the concurrency limit,"
+                        + " faster ones increase it.",
+                min = "1",
+                type = AttributeType.INTEGER)
+        int concurrencyLimit_latencyThreshold() default 1000;
+
+        @AttributeDefinition(
+                name = "Concurrency limit queue size",
+                description = "The number of queries which can wait for the concurrency limit. Further queries are"
+                        + " rejected immediately.",
+                min = "0",
+                type = AttributeType.INTEGER)
+        int concurrencyLimit_queueSize() default 10;
+
+        @AttributeDefinition(
+                name = "Concurrency limit queue timeout",
+                description = "The maximum amount of time a query waits in the queue before it's rejected (in"
+                        + " milliseconds).",
+                min = "0",
+                type = AttributeType.INTEGER)
+        int concurrencyLimit_queueTimeout() default 100;
+
+        @AttributeDefinition(
+                name = "Concurrency limit degradation threshold",
+                description = "While at least this number of queries is waiting for the concurrency limit, the fields"
+                        + " marked with the @degradable directive are not fetched by the queries which start. 0 disables"
+                        + " the degradation of fields.",
+                min = "0",
+                type = AttributeType.INTEGER)
+        int concurrencyLimit_degradeQueued() default 0;
     }
 
     @Reference
@@ -129,12 +249,28 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
     private Pattern patternGetPersistedQuery;
     private int cacheControlMaxAge;
 
+    private BundleContext bundleContext;
+    private Semaphore liveQueryPermits;
+    private long liveQueryMaxDurationMillis;
+    private long liveQueryHeartbeatMillis;
+    private Set<String> traceAllowedUsers;
+
+    private long disconnectProbeIntervalMillis;
+
+    private ConcurrencyLimiter concurrencyLimiter;
+    private BooleanSupplier overload;
+
     private Counter cacheHits;
     private Counter cacheMisses;
     private Counter requestsServed;
+    private Counter requestsAborted;
+    private Counter requestsRejected;
     private Timer requestTimer;
 
     private String gaugeCacheHitRate;
+    private String gaugeConcurrencyLimit;
+    private String gaugeConcurrencyInFlight;
+    private String gaugeConcurrencyQueued;
 
     @Activate
     private void activate(Config config, ComponentContext componentContext) {
@@ -153,6 +289,22 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
             extensionsPattern.append(")");
         }
         cacheControlMaxAge = config.cache$_$control_max$_$age() >= 0 ? config.cache$_$control_max$_$age() : 0;
+        bundleContext = componentContext.getBundleContext();
+        liveQueryPermits =
+                config.liveQueries_maxConcurrent() > 0 ? new Semaphore(config.liveQueries_maxConcurrent()) : null;
+        liveQueryMaxDurationMillis = TimeUnit.SECONDS.toMillis(Math.max(1, config.liveQueries_maxDuration()));
+        liveQueryHeartbeatMillis = TimeUnit.SECONDS.toMillis(Math.max(1, config.liveQueries_heartbeatInterval()));
+        traceAllowedUsers = new HashSet<>(Arrays.asList(config.trace_allowedUsers()));
+        disconnectProbeIntervalMillis = Math.max(config.clientDisconnect_probeInterval(), 0);
+        concurrencyLimiter = config.concurrencyLimit_max() > 0
+                ? new ConcurrencyLimiter(
+                        config.concurrencyLimit_initial(),
+                        1,
+                        config.concurrencyLimit_max(),
+                        config.concurrencyLimit_latencyThreshold(),
+                        config.concurrencyLimit_queueSize(),
+                        config.concurrencyLimit_queueTimeout())
+                : null;
         String suffix = config.persistedQueries_suffix();
         if (StringUtils.isNotEmpty(suffix) && suffix.startsWith("/")) {
             suffixPersisted = suffix;
@@ -184,6 +336,8 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
         cacheHits = metricsService.counter(servicePid + "." + servletRegistrationProperties + ".cache_hits");
         cacheMisses = metricsService.counter(servicePid + "." + servletRegistrationProperties + ".cache_misses");
         requestsServed = metricsService.counter(servicePid + "." + servletRegistrationProperties + ".requests_total");
+        requestsAborted =
+                metricsService.counter(servicePid + "." + servletRegistrationProperties + ".requests_aborted");
         gaugeCacheHitRate = servicePid + "." + servletRegistrationProperties + ".cache_hit_rate";
         metricRegistry.register(gaugeCacheHitRate, (Gauge<Float>) () -> {
             float hitCount = cacheHits.getCount();
@@ -191,6 +345,19 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
             return hitCount > 0 || missCount > 0 ? hitCount / (hitCount + missCount) : 0.0f;
         });
         requestTimer = metricsService.timer(servicePid + "." + servletRegistrationProperties + ".requests_timer");
+        requestsRejected =
+                metricsService.counter(servicePid + "." + servletRegistrationProperties + ".requests_rejected");
+        if (concurrencyLimiter != null) {
+            final ConcurrencyLimiter limiter = concurrencyLimiter;
+            gaugeConcurrencyLimit = servicePid + "." + servletRegistrationProperties + ".concurrency_limit";
+            gaugeConcurrencyInFlight = servicePid + "." + servletRegistrationProperties + ".concurrency_in_flight";
+            gaugeConcurrencyQueued = servicePid + "." + servletRegistrationProperties + ".concurrency_queued";
+            metricRegistry.register(gaugeConcurrencyLimit, (Gauge<Integer>) limiter::getLimit);
+            metricRegistry.register(gaugeConcurrencyInFlight, (Gauge<Integer>) limiter::getInFlight);
+            metricRegistry.register(gaugeConcurrencyQueued, (Gauge<Integer>) limiter::getQueued);
+            final int degradeQueued = config.concurrencyLimit_degradeQueued();
+            overload = degradeQueued > 0 ? () -> limiter.getQueued() >= degradeQueued : null;
+        }
     }
 
     @Deactivate
@@ -198,6 +365,11 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
         if (StringUtils.isNotEmpty(gaugeCacheHitRate)) {
             metricRegistry.remove(gaugeCacheHitRate);
         }
+        for (String gauge : new String[] {gaugeConcurrencyLimit, gaugeConcurrencyInFlight, gaugeConcurrencyQueued}) {
+            if (StringUtils.isNotEmpty(gauge)) {
+                metricRegistry.remove(gauge);
+            }
+        }
     }
 
     @Override
@@ -228,6 +400,8 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
                                         cacheControlValue.append(",private");
                                     }
                                     response.addHeader("Cache-Control", cacheControlValue.toString());
+                                    // the response is JSON, multipart/mixed or an event stream depending on Accept
+                                    response.addHeader("Vary", "Accept");
                                     execute(query, request, response);
                                     cacheHits.increment();
                                 } else {
@@ -317,35 +491,244 @@ public class GraphQLServlet extends SlingAllMethodsServlet {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing request parameter:" + P_QUERY);
             return;
         }
+        execute(result, resource, request, response, false);
+    }
+
+    private void execute(
+            @NotNull String persistedQuery, SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        final QueryParser.Result result;
+        try {
+            result = QueryParser.fromJSON(persistedQuery);
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+        execute(result, request.getResource(), request, response, true);
+    }
 
-        try (JsonWriter writer = Json.createWriter(response.getWriter())) {
-            Map<String, Object> executionResult = queryExecutor.execute(
-                    query,
+    private void execute(
+            @NotNull QueryParser.Result result,
+            @NotNull Resource resource,
+            SlingHttpServletRequest request,
+            SlingHttpServletResponse response,
+            boolean persisted)
+            throws IOException {
+        if (liveQueryPermits != null
+                && accepts(request, MIME_TYPE_EVENT_STREAM)
+                && LiveQuery.isLive(result.getQuery())) {
+            executeLive(result, resource, request, response);
+            return;
+        }
+        if (concurrencyLimiter == null) {
+            execute(result, resource, request, response);
+            return;
+        }
+        ConcurrencyLimiter.Permit permit = null;
+        try {
+            permit = concurrencyLimiter.acquire(persisted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (permit == null) {
+            requestsRejected.increment();
+            // the Cache-Control header of persisted queries doesn't apply to this response
+            response.setHeader("Cache-Control", "no-store");
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent queries.");
+            return;
+        }
+        try {
+            execute(result, resource, request, response);
+        } finally {
+            permit.close();
+        }
+    }
+
+    private void execute(
+            @NotNull QueryParser.Result result,
+            @NotNull Resource resource,
+            SlingHttpServletRequest request,
+            SlingHttpServletResponse response)
+            throws IOException {
+        if (accepts(request, MIME_TYPE_MULTIPART_MIXED)) {
+            executeIncrementally(result, resource, request, response);
+            return;
+        }
+        final ClientConnection connection = new ClientConnection(response, disconnectProbeIntervalMillis);
+        final Map<String, Object> executionResult;
+        try {
+            executionResult = queryExecutor.execute(
+                    result.getQuery(),
                     result.getVariables(),
                     resource,
-                    request.getRequestPathInfo().getSelectors());
+                    request.getRequestPathInfo().getSelectors(),
+                    getExecutionOptions(request, connection));
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        } finally {
+            connection.stopProbing();
+        }
+        if (connection.getAsBoolean()) {
+            aborted(request);
+            return;
+        }
+        try (JsonWriter writer = Json.createWriter(response.getWriter())) {
             writer.write(Json.createObjectBuilder(executionResult).build().asJsonObject());
         } catch (Exception ex) {
             throw new IOException(ex);
         }
     }
 
-    private void execute(
-            @NotNull String persistedQuery, SlingHttpServletRequest request, SlingHttpServletResponse response)
+    private void executeIncrementally(
+            @NotNull QueryParser.Result result,
+            @NotNull Resource resource,
+            SlingHttpServletRequest request,
+            SlingHttpServletResponse response)
             throws IOException {
-        response.setContentType("application/json");
+        // set before executing, as probing the client connection commits the response headers
+        response.setContentType(MIME_TYPE_MULTIPART_MIXED + "; boundary=\"" + MULTIPART_BOUNDARY + "\"");
         response.setCharacterEncoding("UTF-8");
-        try (JsonWriter writer = Json.createWriter(response.getWriter())) {
-            final QueryParser.Result result = QueryParser.fromJSON(persistedQuery);
-            Map<String, Object> executionResult = queryExecutor.execute(
+        final ClientConnection connection = new ClientConnection(response, disconnectProbeIntervalMillis);
+        final IncrementalResult incrementalResult;
+        try {
+            incrementalResult = queryExecutor.executeIncrementally(
                     result.getQuery(),
                     result.getVariables(),
-                    request.getResource(),
-                    request.getRequestPathInfo().getSelectors());
-            writer.write(Json.createObjectBuilder(executionResult).build().asJsonObject());
+                    resource,
+                    request.getRequestPathInfo().getSelectors(),
+                    getExecutionOptions(request, connection));
         } catch (Exception ex) {
             throw new IOException(ex);
+        } finally {
+            // the deferred payloads are written between the parts, where probes aren't allowed
+            connection.stopProbing();
+        }
+        // ends the execution, even if the subsequent payloads are not delivered
+        try (IncrementalResult closing = incrementalResult) {
+            if (connection.getAsBoolean()) {
+                aborted(request);
+                return;
+            }
+            final PrintWriter writer = response.getWriter();
+            try {
+                writer.write("\r\n--" + MULTIPART_BOUNDARY);
+                writePart(writer, closing.getInitialPayload());
+                closing.forEachSubsequentPayload(payload -> {
+                    try {
+                        writePart(writer, payload);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException | UncheckedIOException e) {
+                // writePart only fails if the client has disconnected, which cancels the deferred fetchers still to run
+                connection.disconnected();
+                aborted(request);
+                return;
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+            writer.write("--\r\n");
+            writer.flush();
+        }
+    }
+
+    private void aborted(@NotNull SlingHttpServletRequest request) {
+        requestsAborted.increment();
+        LOGGER.debug("The client disconnected, aborted the execution of the query at {}", request.getPathInfo());
+    }
+
+    /** Writes a part of a multipart/mixed response and flushes it to the client */
+    private void writePart(@NotNull PrintWriter writer, @NotNull Map<String, Object> payload) throws IOException {
+        final StringWriter json = new StringWriter();
+        try (JsonWriter jsonWriter = Json.createWriter(json)) {
+            jsonWriter.write(Json.createObjectBuilder(payload).build().asJsonObject());
+        }
+        writer.write("\r\nContent-Type: application/json; charset=utf-8\r\n\r\n");
+        writer.write(json.toString());
+        writer.write("\r\n--" + MULTIPART_BOUNDARY);
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Unable to write the multipart response, the client might have disconnected.");
+        }
+    }
+
+    private void executeLive(
+            @NotNull QueryParser.Result result,
+            @NotNull Resource resource,
+            SlingHttpServletRequest request,
+            SlingHttpServletResponse response)
+            throws IOException {
+        // the Cache-Control header of persisted queries doesn't apply to event streams
+        response.setHeader("Cache-Control", "no-store");
+        if (!liveQueryPermits.tryAcquire()) {
+            response.setHeader(
+                    "Retry-After", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(liveQueryHeartbeatMillis)));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many live queries.");
+            return;
+        }
+        try {
+            response.setContentType(MIME_TYPE_EVENT_STREAM);
+            response.setCharacterEncoding("UTF-8");
+            new LiveQuery(
+                            queryExecutor,
+                            result,
+                            resource,
+                            request.getRequestPathInfo().getSelectors(),
+                            bundleContext,
+                            liveQueryHeartbeatMillis,
+                            liveQueryMaxDurationMillis)
+                    .run(response.getWriter());
+        } finally {
+            liveQueryPermits.release();
+        }
+    }
+
+    @NotNull
+    private ExecutionOptions getExecutionOptions(
+            @NotNull SlingHttpServletRequest request, @NotNull ClientConnection connection) {
+        final boolean trace = "true".equalsIgnoreCase(request.getHeader(TRACE_HEADER))
+                && request.getRemoteUser() != null
+                && traceAllowedUsers.contains(request.getRemoteUser());
+        final long timeout = getRequestedTimeout(request);
+        if (trace) {
+            LOGGER.debug("Tracing query execution for {} at {}", request.getRemoteUser(), request.getPathInfo());
+        }
+        return ExecutionOptions.Builder.newBuilder()
+                .withTrace(trace)
+                .withTimeout(timeout)
+                .withCancellation(connection)
+                .withOverload(overload)
+                .build();
+    }
+
+    /** The requested timeout can only shorten the one configured in the QueryExecutor, so any client can set it */
+    private static long getRequestedTimeout(@NotNull SlingHttpServletRequest request) {
+        final String value = request.getHeader(TIMEOUT_HEADER);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(Long.parseLong(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Ignoring invalid {} header: {}", TIMEOUT_HEADER, value);
+            return 0;
+        }
+    }
+
+    static boolean accepts(@NotNull SlingHttpServletRequest request, @NotNull String mimeType) {
+        final String accept = request.getHeader("Accept");
+        if (accept == null) {
+            return false;
+        }
+        for (String mediaRange : accept.split(",")) {
+            if (mimeType.equalsIgnoreCase(mediaRange.split(";")[0].trim())) {
+                return true;
+            }
         }
+        return false;
     }
 
     @NotNull
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.InvalidSyntaxException;
+import graphql.parser.Parser;
+import jakarta.json.Json;
+import jakarta.json.JsonWriter;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Runs a query marked with the {@code @live} directive: the result is pushed
+ *  to the client as a Server-Sent Event, and the query is executed again, and
+ *  its result pushed if it differs from the previous one, whenever one of the
+ *  resources that the previous execution read changes.
+ *
+ *  The live query holds the request thread until it ends, which happens when
+ *  the client disconnects or its maximum duration is reached.
+ */
+class LiveQuery implements ResourceChangeListener, ExternalResourceChangeListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LiveQuery.class);
+
+    static final String LIVE_DIRECTIVE = "live";
+    static final String EVENT_NEXT = "next";
+    static final String EVENT_COMPLETE = "complete";
+
+    private final QueryExecutor queryExecutor;
+    private final QueryParser.Result query;
+    private final Resource resource;
+    private final String[] selectors;
+    private final BundleContext bundleContext;
+    private final long heartbeatMillis;
+    private final long maxDurationMillis;
+    private final Semaphore changes = new Semaphore(0);
+
+    private volatile Set<String> dependencies = Collections.emptySet();
+    private ServiceRegistration<ResourceChangeListener> registration;
+    private ServiceRegistration<ResourceChangeListener> removalRegistration;
+    private List<String> registeredPaths;
+
+    LiveQuery(
+            @NotNull QueryExecutor queryExecutor,
+            @NotNull QueryParser.Result query,
+            @NotNull Resource resource,
+            @NotNull String[] selectors,
+            @NotNull BundleContext bundleContext,
+            long heartbeatMillis,
+            long maxDurationMillis) {
+        this.queryExecutor = queryExecutor;
+        this.query = query;
+        this.resource = resource;
+        this.selectors = selectors;
+        this.bundleContext = bundleContext;
+        this.heartbeatMillis = heartbeatMillis;
+        this.maxDurationMillis = maxDurationMillis;
+    }
+
+    /** @return true if the query's operation is a query marked with the {@code @live} directive */
+    static boolean isLive(@NotNull String query) {
+        try {
+            final Document document = Parser.parse(query);
+            for (OperationDefinition operation : document.getDefinitionsOfType(OperationDefinition.class)) {
+                if (operation.getOperation() == OperationDefinition.Operation.QUERY
+                        && operation.hasDirective(LIVE_DIRECTIVE)) {
+                    return true;
+                }
+            }
+        } catch (InvalidSyntaxException e) {
+            LOGGER.debug("Unable to parse query, considering it as not live.", e);
+        }
+        return false;
+    }
+
+    /** Runs the live query until the client disconnects or its maximum duration is reached */
+    void run(@NotNull PrintWriter writer) throws IOException {
+        final long deadline = System.currentTimeMillis() + maxDurationMillis;
+        final ResourceResolver resolver = resource.getResourceResolver();
+        String lastPayload = null;
+        try {
+            updateDependencies(Collections.singleton(resource.getPath()));
+            while (true) {
+                final DependencyTrackingResourceResolver tracker = new DependencyTrackingResourceResolver(resolver);
+                Resource current = lastPayload == null ? null : resolver.getResource(resource.getPath());
+                if (current == null) {
+                    current = resource;
+                }
+                final Map<String, Object> result = queryExecutor.execute(
+                        query.getQuery(), query.getVariables(), tracker.track(current), selectors);
+                final String payload = toJson(result);
+                if (!payload.equals(lastPayload)) {
+                    writeEvent(writer, EVENT_NEXT, payload);
+                    lastPayload = payload;
+                }
+                updateDependencies(tracker.getPaths());
+                if (!awaitChange(writer, deadline)) {
+                    writeEvent(writer, EVENT_COMPLETE, "");
+                    return;
+                }
+                resolver.refresh();
+            }
+        } finally {
+            if (registration != null) {
+                registration.unregister();
+            }
+            if (removalRegistration != null) {
+                removalRegistration.unregister();
+            }
+        }
+    }
+
+    /** @return true if a relevant change happened, false if the maximum duration was reached */
+    private boolean awaitChange(PrintWriter writer, long deadline) throws IOException {
+        try {
+            while (true) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                if (changes.tryAcquire(Math.min(heartbeatMillis, remaining), TimeUnit.MILLISECONDS)) {
+                    // coalesce the changes which happened in the meantime into a single execution
+                    changes.drainPermits();
+                    return true;
+                }
+                writer.write(": keep-alive\n\n");
+                flush(writer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> resourceChanges) {
+        final Set<String> paths = dependencies;
+        for (ResourceChange change : resourceChanges) {
+            if (dependsOn(paths, change)) {
+                LOGGER.debug("Live query depends on changed resource {}", change.getPath());
+                changes.release();
+                return;
+            }
+        }
+    }
+
+    /** A query depends on a change if it read the changed resource, if the changed resource is a child of
+     *  a resource it read, since the children might have been listed, or if the change removed an ancestor
+     *  of a resource it read.
+     */
+    static boolean dependsOn(@NotNull Set<String> paths, @NotNull ResourceChange change) {
+        final String path = change.getPath();
+        if (paths.contains(path)) {
+            return true;
+        }
+        final int lastSlash = path.lastIndexOf('/');
+        if (lastSlash >= 0 && paths.contains(lastSlash == 0 ? "/" : path.substring(0, lastSlash))) {
+            return true;
+        }
+        if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+            final String prefix = path.endsWith("/") ? path : path + "/";
+            for (String dependency : paths) {
+                if (dependency.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void updateDependencies(@NotNull Set<String> paths) {
+        dependencies = paths;
+        // ResourceChangeListener paths include their subtrees, so registering the topmost paths is enough
+        final List<String> topmostPaths = new ArrayList<>();
+        for (String path : paths) {
+            boolean covered = false;
+            for (String topmost : topmostPaths) {
+                if (topmost.equals("/") || path.equals(topmost) || path.startsWith(topmost + "/")) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                topmostPaths.add(path);
+            }
+        }
+        if (topmostPaths.equals(registeredPaths)) {
+            return;
+        }
+        registration = register(
+                registration,
+                topmostPaths,
+                ResourceChangeListener.CHANGE_ADDED,
+                ResourceChangeListener.CHANGE_REMOVED,
+                ResourceChangeListener.CHANGE_CHANGED);
+        // removing a subtree is reported for its root only, so the removals of the ancestors are listened to
+        // as well, with globs that match these exact paths and not their subtrees
+        final Set<String> ancestors = new LinkedHashSet<>();
+        for (String path : topmostPaths) {
+            for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+                ancestors.add("glob:" + path.substring(0, i));
+            }
+        }
+        if (ancestors.isEmpty()) {
+            if (removalRegistration != null) {
+                removalRegistration.unregister();
+                removalRegistration = null;
+            }
+        } else {
+            removalRegistration =
+                    register(removalRegistration, new ArrayList<>(ancestors), ResourceChangeListener.CHANGE_REMOVED);
+        }
+        registeredPaths = topmostPaths;
+    }
+
+    private ServiceRegistration<ResourceChangeListener> register(
+            ServiceRegistration<ResourceChangeListener> existing, List<String> paths, String... changes) {
+        final Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(ResourceChangeListener.PATHS, paths.toArray(new String[0]));
+        properties.put(ResourceChangeListener.CHANGES, changes);
+        if (existing == null) {
+            return bundleContext.registerService(ResourceChangeListener.class, this, properties);
+        }
+        existing.setProperties(properties);
+        return existing;
+    }
+
+    private static String toJson(Map<String, Object> result) {
+        final StringWriter json = new StringWriter();
+        try (JsonWriter jsonWriter = Json.createWriter(json)) {
+            jsonWriter.write(Json.createObjectBuilder(result).build().asJsonObject());
+        }
+        return json.toString();
+    }
+
+    private static void writeEvent(PrintWriter writer, String event, String data) throws IOException {
+        writer.write("event: " + event + "\ndata: " + data + "\n\n");
+        flush(writer);
+    }
+
+    private static void flush(PrintWriter writer) throws IOException {
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Unable to write the event stream, the client might have disconnected.");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.helpers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.graphql.api.pagination.Cursor;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/** Remembers the position, in their data, of the end cursors of recently built
+ *  {@link GenericConnection} pages, so that the next page can be resumed from
+ *  that position instead of scanning the data for its "start after" cursor.
+ *
+ *  Positions are kept instead of positioned iterators, since the latter are
+ *  usually bound to the request's resource resolver, which is closed at the
+ *  end of the request. An instance is meant to be shared between requests,
+ *  for example as a field of a {@code SlingDataFetcher}. It holds at most
+ *  {@code maxEntries} entries, for at most {@code timeToLive}; evicted or
+ *  expired entries, as well as positions which do not match the data
+ *  anymore, cause a connection to fall back to scanning.
+ */
+@ProviderType
+public final class CursorPositionCache {
+
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final Map<String, Position> entries;
+
+    private static final class Position {
+        final long position;
+        final long expiresAt;
+
+        Position(long position, long expiresAt) {
+            this.position = position;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** @param maxEntries the maximum number of positions kept, must be &gt; 0
+     *  @param timeToLive how long a position is kept, must be &gt; 0
+     *  @param unit the unit of {@code timeToLive}
+     */
+    public CursorPositionCache(int maxEntries, long timeToLive, @NotNull TimeUnit unit) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid maxEntries " + maxEntries);
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Invalid timeToLive " + timeToLive);
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.entries = new LinkedHashMap<String, Position>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Position> eldest) {
+                return size() > CursorPositionCache.this.maxEntries
+                        || eldest.getValue().expiresAt - System.nanoTime() <= 0;
+            }
+        };
+    }
+
+    /** @return the position of the item that the cursor points to, or -1 if it's unknown */
+    long get(@NotNull String scope, @NotNull Cursor cursor) {
+        final String key = getKey(scope, cursor);
+        synchronized (entries) {
+            final Position entry = entries.get(key);
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.expiresAt - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return -1;
+            }
+            return entry.position;
+        }
+    }
+
+    void put(@NotNull String scope, @NotNull Cursor cursor, long position) {
+        final Position entry = new Position(position, System.nanoTime() + timeToLiveNanos);
+        final String key = getKey(scope, cursor);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /** @return the number of positions currently kept, including expired ones which were not evicted yet */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static String getKey(String scope, Cursor cursor) {
+        return scope + '\n' + cursor.getRawValue();
+    }
+}
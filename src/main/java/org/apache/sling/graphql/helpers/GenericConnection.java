@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.LongFunction;
 
 import org.apache.sling.graphql.api.SlingGraphQLException;
 import org.apache.sling.graphql.api.pagination.Connection;
@@ -37,7 +38,13 @@ import org.osgi.annotation.versioning.ConsumerType;
  *
  *  Use the {@link Builder} class to build a Connection that outputs
  *  the supplied data, optionally sliced based on a "start after" cursor
- *  and a limit on the number of items output.
+ *  and a limit on the number of items output. Backward pagination is
+ *  supported as well, using an "end before" cursor and a number of items
+ *  to output from the end of the selected range.
+ *
+ *  The data can be supplied as an {@link Iterator}, which is scanned
+ *  from the beginning to find the "start after" cursor, or as a
+ *  {@link SeekableDataSource} which positions itself on that cursor.
  */
 @ConsumerType
 public final class GenericConnection<T> implements Connection<T>, PageInfo {
@@ -48,23 +55,37 @@ public final class GenericConnection<T> implements Connection<T>, PageInfo {
     public static final int MAX_LIMIT = 100;
 
     private final List<Edge<T>> edges;
-    private final Iterator<T> dataIterator;
+    private Iterator<T> dataIterator;
+    private final SeekableDataSource<T> dataSource;
     private final Function<T, String> cursorStringProvider;
     private boolean initialized;
     private Cursor startAfter = null;
+    private Cursor endBefore = null;
     private Cursor startCursor = null;
     private Cursor endCursor = null;
     private Boolean hasPreviousPage;
     private Boolean hasNextPage;
     private int limit = DEFAULT_LIMIT;
+    private boolean limitSet;
+    private Integer last;
+    private CursorPositionCache positionCache;
+    private String positionScope;
+    private LongFunction<Iterator<T>> fromPosition;
+    private PagePrefetcher<T> prefetcher;
+    private String prefetchUserId;
+    private String prefetchScope;
+    private SeekableDataSource<T> prefetchSource;
 
     /** The Builder must be used to construct this */
-    private GenericConnection(@NotNull Iterator<T> dataIterator, @NotNull Function<T, String> cursorStringProvider) {
-        checkNotNull(dataIterator, "Data iterator");
+    private GenericConnection(
+            @Nullable Iterator<T> dataIterator,
+            @Nullable SeekableDataSource<T> dataSource,
+            @NotNull Function<T, String> cursorStringProvider) {
         checkNotNull(cursorStringProvider, "Cursor string provider function");
 
         edges = new ArrayList<>();
         this.dataIterator = dataIterator;
+        this.dataSource = dataSource;
         this.cursorStringProvider = cursorStringProvider;
     }
 
@@ -74,50 +95,141 @@ public final class GenericConnection<T> implements Connection<T>, PageInfo {
         }
         initialized = true;
 
+        // when only "last" is set, the range ends at "endBefore" or at the end of the data
+        final int first = last != null && !limitSet ? Integer.MAX_VALUE : limit;
+
         // Need to visit the stream first to setup the PageInfo, which graphql-java
         // apparently uses before visiting all the edges
-        boolean inRange = false;
-        int itemsToAdd = limit;
-        while (itemsToAdd > 0 && dataIterator.hasNext()) {
-            final T node = dataIterator.next();
-            boolean addThisNode = false;
-            if (!inRange) {
-                if (startAfter == null) {
-                    inRange = true;
-                    addThisNode = true;
-                    if (hasPreviousPage == null) {
-                        hasPreviousPage = false;
-                    }
-                } else {
-                    final String rawCursor = cursorStringProvider.apply(node);
-                    inRange = startAfter.getRawValue().equals(rawCursor);
-                    if (hasPreviousPage == null) {
-                        hasPreviousPage = true;
-                    }
-                }
-            } else {
-                addThisNode = true;
+        boolean afterFound = false;
+        // position of the next item of dataIterator in the data, -1 if unknown
+        long position = startAfter == null ? 0 : -1;
+        final long cachedPosition =
+                positionCache != null && startAfter != null ? positionCache.get(positionScope, startAfter) : -1;
+        final boolean forwardOnly = last == null && endBefore == null;
+        final Iterator<T> prefetched = prefetcher != null && startAfter != null && forwardOnly
+                ? prefetcher.take(prefetchUserId, prefetchScope, startAfter, first)
+                : null;
+        final Iterator<T> resumed = prefetched == null && cachedPosition >= 0 ? resumeAt(cachedPosition) : null;
+        if (prefetched != null) {
+            dataIterator = prefetched;
+            afterFound = true;
+        } else if (resumed != null) {
+            dataIterator = resumed;
+            afterFound = true;
+            position = cachedPosition + 1;
+        } else if (dataSource != null) {
+            dataIterator = dataSource.seekAfter(startAfter);
+            if (dataIterator == null) {
+                throw new SlingGraphQLException("Start cursor not found in supplied data:" + startAfter);
             }
+            afterFound = startAfter != null;
+        } else if (startAfter != null && first > 0) {
+            position = 0;
+            while (!afterFound && dataIterator.hasNext()) {
+                afterFound = startAfter.getRawValue().equals(cursorStringProvider.apply(dataIterator.next()));
+                position++;
+            }
+            if (!afterFound) {
+                throw new SlingGraphQLException("Start cursor not found in supplied data:" + startAfter);
+            }
+        }
 
-            if (addThisNode) {
-                final Edge<T> toAdd = newEdge(node, cursorStringProvider);
-                if (startCursor == null) {
-                    startCursor = toAdd.getCursor();
+        // with "last", only the last items of the range are kept, in a buffer bounded by the page size
+        final RingBuffer<Edge<T>> window = last != null ? new RingBuffer<>(last) : null;
+        boolean beforeFound = false;
+        int taken = 0;
+        while (taken < first && dataIterator.hasNext()) {
+            final T node = dataIterator.next();
+            String rawCursor = null;
+            if (endBefore != null) {
+                rawCursor = cursorStringProvider.apply(node);
+                if (endBefore.getRawValue().equals(rawCursor)) {
+                    beforeFound = true;
+                    break;
                 }
-                endCursor = toAdd.getCursor();
-                edges.add(toAdd);
-                itemsToAdd--;
             }
+            final Edge<T> edge = new GenericEdge<>(node, rawCursor, cursorStringProvider);
+            if (window != null) {
+                window.add(edge);
+            } else {
+                edges.add(edge);
+            }
+            taken++;
+        }
+        if (endBefore != null && !beforeFound && first > 0 && !dataIterator.hasNext()) {
+            throw new SlingGraphQLException("End cursor not found in supplied data:" + endBefore);
+        }
+        if (window != null) {
+            window.drainTo(edges);
         }
 
-        if (!inRange && limit > 0 && startAfter != null) {
-            throw new SlingGraphQLException("Start cursor not found in supplied data:" + startAfter);
+        if (!edges.isEmpty()) {
+            startCursor = edges.get(0).getCursor();
+            endCursor = edges.get(edges.size() - 1).getCursor();
+            if (positionCache != null && position >= 0) {
+                positionCache.put(positionScope, endCursor, position + taken - 1);
+            }
         }
         if (hasPreviousPage == null) {
-            hasPreviousPage = false;
+            hasPreviousPage = afterFound || (window != null && window.hasDropped());
         }
+        final boolean moreData = beforeFound || dataIterator.hasNext();
         if (hasNextPage == null) {
-            hasNextPage = dataIterator.hasNext();
+            hasNextPage = moreData;
+        }
+        if (prefetcher != null && forwardOnly && moreData && endCursor != null) {
+            // one more node tells whether the prefetched page has a next page
+            prefetcher.prefetch(prefetchUserId, prefetchScope, endCursor, limit + 1, prefetchSource);
+        }
+    }
+
+    /** @return an iterator positioned after the startAfter cursor, which is expected at the supplied
+     *  position, or null if it's not found there */
+    private Iterator<T> resumeAt(long cursorPosition) {
+        // the data might have changed since the position was cached, so verify the cursor
+        final Iterator<T> it = fromPosition.apply(cursorPosition);
+        if (it != null && it.hasNext() && startAfter.getRawValue().equals(cursorStringProvider.apply(it.next()))) {
+            return it;
+        }
+        return null;
+    }
+
+    /** Fixed-size buffer which keeps the last items added to it */
+    private static final class RingBuffer<E> {
+        private final Object[] items;
+        private int next;
+        private int size;
+        private boolean dropped;
+
+        RingBuffer(int capacity) {
+            items = new Object[capacity];
+        }
+
+        void add(E item) {
+            if (items.length == 0) {
+                dropped = true;
+                return;
+            }
+            if (size == items.length) {
+                dropped = true;
+            } else {
+                size++;
+            }
+            items[next] = item;
+            next = (next + 1) % items.length;
+        }
+
+        boolean hasDropped() {
+            return dropped;
+        }
+
+        @SuppressWarnings("unchecked")
+        void drainTo(List<E> target) {
+            // once the buffer is full, the oldest item is the one that will be overwritten next
+            final int start = size < items.length ? 0 : next;
+            for (int i = 0; i < size; i++) {
+                target.add((E) items[(start + i) % items.length]);
+            }
         }
     }
 
@@ -127,18 +239,33 @@ public final class GenericConnection<T> implements Connection<T>, PageInfo {
         }
     }
 
-    private Edge<T> newEdge(final T node, final Function<T, String> cursorStringProvider) {
-        return new Edge<T>() {
-            @Override
-            public @NotNull T getNode() {
-                return node;
-            }
+    /** Edge which computes its cursor at most once, reusing the cursor string if it's already known */
+    private static final class GenericEdge<T> implements Edge<T> {
+        private final T node;
+        private final Function<T, String> cursorStringProvider;
+        private final String rawCursor;
+        private Cursor cursor;
+
+        GenericEdge(@NotNull T node, @Nullable String rawCursor, @NotNull Function<T, String> cursorStringProvider) {
+            this.node = node;
+            this.rawCursor = rawCursor;
+            this.cursorStringProvider = cursorStringProvider;
+        }
 
-            @Override
-            public @NotNull Cursor getCursor() {
-                return new Cursor(cursorStringProvider.apply(node));
+        @Override
+        public @NotNull T getNode() {
+            return node;
+        }
+
+        @Override
+        public @NotNull Cursor getCursor() {
+            Cursor result = cursor;
+            if (result == null) {
+                result = new Cursor(rawCursor != null ? rawCursor : cursorStringProvider.apply(node));
+                cursor = result;
             }
-        };
+            return result;
+        }
     }
 
     @Override
@@ -182,7 +309,27 @@ public final class GenericConnection<T> implements Connection<T>, PageInfo {
          *  @param cursorStringProvider extracts a String from an object of type T to create a Cursor
          */
         public Builder(@NotNull Iterator<T> dataIterator, @NotNull Function<T, String> cursorStringProvider) {
-            connection = new GenericConnection<>(dataIterator, cursorStringProvider);
+            checkNotNull(dataIterator, "Data iterator");
+            connection = new GenericConnection<>(dataIterator, null, cursorStringProvider);
+        }
+
+        private Builder(@NotNull GenericConnection<T> connection) {
+            this.connection = connection;
+        }
+
+        /** Builder for a Connection that will output the supplied data, which is positioned after the
+         *  startAfter Cursor by the data source itself instead of being scanned from the beginning.
+         *
+         *  @param dataSource the connection's data - must contain the item that startAfter points to if that
+         *      Cursor is set, but can contain less items that set by the "limit" parameter.
+         *  @param cursorStringProvider extracts a String from an object of type T to create a Cursor
+         *  @param <T> the type of the data items
+         *  @return the builder
+         */
+        public static <T> Builder<T> fromDataSource(
+                @NotNull SeekableDataSource<T> dataSource, @NotNull Function<T, String> cursorStringProvider) {
+            checkNotNull(dataSource, "Data source");
+            return new Builder<>(new GenericConnection<>(null, dataSource, cursorStringProvider));
         }
 
         /**
@@ -192,14 +339,32 @@ public final class GenericConnection<T> implements Connection<T>, PageInfo {
          * @return this builder
          */
         public Builder<T> withLimit(int limit) {
+            connection.limit = checkLimit(limit);
+            connection.limitSet = true;
+            return this;
+        }
+
+        /**
+         * Output only the last {@code last} items of the selected range, for backward pagination. If no
+         * limit is set, the range ends at the {@code endBefore} cursor or at the end of the data, otherwise
+         * the last items are taken from the first {@code limit} items of the range.
+         *
+         * @param last must be &lt;= MAX_LIMIT
+         * @return this builder
+         */
+        public Builder<T> withLast(int last) {
+            connection.last = checkLimit(last);
+            return this;
+        }
+
+        private static int checkLimit(int limit) {
             if (limit < 0) {
-                limit = 0;
+                return 0;
             }
             if (limit > MAX_LIMIT) {
                 throw new IllegalArgumentException("Invalid limit " + limit + ", the maximum value is " + MAX_LIMIT);
             }
-            connection.limit = limit;
-            return this;
+            return limit;
         }
 
         /**
@@ -213,6 +378,72 @@ public final class GenericConnection<T> implements Connection<T>, PageInfo {
             return this;
         }
 
+        /**
+         * If set, the connection will stop before the item that the {@code c} {@link Cursor} points to.
+         *
+         * @param c the cursor for {@code endBefore}
+         * @return this builder
+         */
+        public Builder<T> withEndBefore(@Nullable Cursor c) {
+            connection.endBefore = c;
+            return this;
+        }
+
+        /**
+         * Use the supplied cache to resume the connection from the position of its "start after" cursor,
+         * if that cursor was the end cursor of a recent page, instead of scanning or seeking the data. The
+         * end cursor of this connection is added to the cache. If the cursor's position is not cached
+         * anymore, or doesn't match the data anymore, the connection falls back to its data iterator or
+         * data source.
+         *
+         * @param cache the cache, usually shared between requests
+         * @param scope identifies the data among all the data which uses the same cache, for example by
+         *     combining the query arguments which select it
+         * @param fromPosition provides an iterator which starts at the supplied 0-based position in the data
+         * @return this builder
+         */
+        public Builder<T> withPositionCache(
+                @NotNull CursorPositionCache cache,
+                @NotNull String scope,
+                @NotNull LongFunction<Iterator<T>> fromPosition) {
+            checkNotNull(cache, "Cursor position cache");
+            checkNotNull(scope, "Cursor position scope");
+            checkNotNull(fromPosition, "Position function");
+            connection.positionCache = cache;
+            connection.positionScope = scope;
+            connection.fromPosition = fromPosition;
+            return this;
+        }
+
+        /**
+         * Prefetch the next page in the background once this connection is built, and use the page
+         * prefetched after the "start after" cursor if available, instead of the data iterator or data
+         * source. Only applies to forward pagination.
+         *
+         * @param prefetcher the prefetcher, usually shared between requests
+         * @param userId the ID of the user who requests the data, usually the one of the request's resource
+         *     resolver. Prefetched pages are only used for the same user.
+         * @param scope identifies the data among all the data which uses the same prefetcher, for example
+         *     by combining the query arguments which select it
+         * @param prefetchSource provides the data of the next page, called in a background thread. It must
+         *     read the data with the permissions of the user, not with a service resolver.
+         * @return this builder
+         */
+        public Builder<T> withPrefetch(
+                @NotNull PagePrefetcher<T> prefetcher,
+                @Nullable String userId,
+                @NotNull String scope,
+                @NotNull SeekableDataSource<T> prefetchSource) {
+            checkNotNull(prefetcher, "Page prefetcher");
+            checkNotNull(scope, "Prefetch scope");
+            checkNotNull(prefetchSource, "Prefetch data source");
+            connection.prefetcher = prefetcher;
+            connection.prefetchUserId = userId;
+            connection.prefetchScope = scope;
+            connection.prefetchSource = prefetchSource;
+            return this;
+        }
+
         /**
          * Force the "has previous page" value, in case the supplied data doesn't expose that but a new query would find it.
          *
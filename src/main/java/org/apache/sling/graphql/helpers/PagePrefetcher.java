@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.graphql.api.pagination.Cursor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ProviderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Speculatively loads the next page of a {@link GenericConnection} in the
+ *  background once a page is built, so that the follow-up request, which
+ *  usually comes soon for infinite scrolling clients, only needs to output
+ *  the prefetched nodes.
+ *
+ *  Prefetching runs on the supplied {@link Executor}, with at most
+ *  {@code maxConcurrentPrefetches} pages being loaded at the same time. At
+ *  most {@code maxNodes} nodes are kept in total, each prefetched page for at
+ *  most {@code timeToLive}; pages which do not fit in that budget are not
+ *  prefetched. A prefetched page is used once, then discarded.
+ *
+ *  The data source used for prefetching is called from the executor's
+ *  threads, so it must not use request-scoped objects like the request's
+ *  resource resolver, which is not thread-safe and is closed at the end of
+ *  the request. It must nevertheless read the data with the permissions of
+ *  the user who requested the page, for example with a resource resolver
+ *  impersonating that user: the prefetched pages are only served to the
+ *  same user, and with a service resolver they would bypass that user's
+ *  access control.
+ */
+@ProviderType
+public final class PagePrefetcher<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagePrefetcher.class);
+
+    private final Executor executor;
+    private final Semaphore prefetchPermits;
+    private final long maxNodes;
+    private final long timeToLiveNanos;
+    private final AtomicLong reservedNodes = new AtomicLong();
+    private final Map<List<String>, Page<T>> pages = new ConcurrentHashMap<>();
+    private final Set<List<String>> pending = ConcurrentHashMap.newKeySet();
+
+    private static final class Page<T> {
+        final List<T> nodes;
+        final boolean complete;
+        final long expiresAt;
+
+        Page(List<T> nodes, boolean complete, long expiresAt) {
+            this.nodes = nodes;
+            this.complete = complete;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** @param executor runs the prefetching tasks
+     *  @param maxConcurrentPrefetches the maximum number of pages being prefetched at the same time, must be &gt; 0
+     *  @param maxNodes the maximum number of prefetched nodes kept in memory, must be &gt; 0
+     *  @param timeToLive how long a prefetched page is kept, must be &gt; 0
+     *  @param unit the unit of {@code timeToLive}
+     */
+    public PagePrefetcher(
+            @NotNull Executor executor,
+            int maxConcurrentPrefetches,
+            long maxNodes,
+            long timeToLive,
+            @NotNull TimeUnit unit) {
+        if (maxConcurrentPrefetches <= 0) {
+            throw new IllegalArgumentException("Invalid maxConcurrentPrefetches " + maxConcurrentPrefetches);
+        }
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("Invalid maxNodes " + maxNodes);
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Invalid timeToLive " + timeToLive);
+        }
+        this.executor = executor;
+        this.prefetchPermits = new Semaphore(maxConcurrentPrefetches);
+        this.maxNodes = maxNodes;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /** @return the number of nodes currently kept or reserved for pages being prefetched */
+    public long getReservedNodes() {
+        return reservedNodes.get();
+    }
+
+    /** Removes and returns the nodes prefetched after the supplied cursor, if there are enough of them
+     *  to fill a page of {@code count} items and to tell whether there's a next page.
+     *
+     *  @return the prefetched nodes, or null if they're not available
+     */
+    @Nullable
+    Iterator<T> take(@Nullable String userId, @NotNull String scope, @NotNull Cursor startAfter, int count) {
+        evictExpired();
+        final Page<T> page = pages.remove(getKey(userId, scope, startAfter));
+        if (page == null) {
+            return null;
+        }
+        reservedNodes.addAndGet(-page.nodes.size());
+        if (page.expiresAt - System.nanoTime() <= 0 || !(page.complete || page.nodes.size() > count)) {
+            return null;
+        }
+        return page.nodes.iterator();
+    }
+
+    /** Loads up to {@code count} nodes following the supplied cursor in the background, if the
+     *  budget allows it.
+     */
+    void prefetch(
+            @Nullable String userId,
+            @NotNull String scope,
+            @NotNull Cursor startAfter,
+            int count,
+            @NotNull SeekableDataSource<T> source) {
+        evictExpired();
+        final List<String> key = getKey(userId, scope, startAfter);
+        if (pages.containsKey(key) || !reserve(count)) {
+            return;
+        }
+        if (!pending.add(key)) {
+            reservedNodes.addAndGet(-count);
+            return;
+        }
+        if (!prefetchPermits.tryAcquire()) {
+            pending.remove(key);
+            reservedNodes.addAndGet(-count);
+            return;
+        }
+        try {
+            executor.execute(() -> load(key, startAfter, count, source));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Prefetching rejected by executor", e);
+            prefetchPermits.release();
+            pending.remove(key);
+            reservedNodes.addAndGet(-count);
+        }
+    }
+
+    private void load(List<String> key, Cursor startAfter, int count, SeekableDataSource<T> source) {
+        int kept = 0;
+        try {
+            final Iterator<T> it = source.seekAfter(startAfter);
+            if (it != null) {
+                final List<T> nodes = new ArrayList<>(count);
+                while (nodes.size() < count && it.hasNext()) {
+                    nodes.add(it.next());
+                }
+                final Page<T> page = new Page<>(
+                        Collections.unmodifiableList(nodes), !it.hasNext(), System.nanoTime() + timeToLiveNanos);
+                kept = nodes.size();
+                final Page<T> previous = pages.put(key, page);
+                if (previous != null) {
+                    reservedNodes.addAndGet(-previous.nodes.size());
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to prefetch page after cursor {}", startAfter, e);
+            kept = 0;
+        } finally {
+            reservedNodes.addAndGet(-(count - kept));
+            pending.remove(key);
+            prefetchPermits.release();
+        }
+    }
+
+    private boolean reserve(int count) {
+        while (true) {
+            final long current = reservedNodes.get();
+            if (current + count > maxNodes) {
+                return false;
+            }
+            if (reservedNodes.compareAndSet(current, current + count)) {
+                return true;
+            }
+        }
+    }
+
+    private void evictExpired() {
+        final long now = System.nanoTime();
+        for (Map.Entry<List<String>, Page<T>> entry : pages.entrySet()) {
+            final Page<T> page = entry.getValue();
+            if (page.expiresAt - now <= 0 && pages.remove(entry.getKey(), page)) {
+                reservedNodes.addAndGet(-page.nodes.size());
+            }
+        }
+    }
+
+    /** The pages are only served to the user who caused them to be prefetched */
+    private static List<String> getKey(String userId, String scope, Cursor cursor) {
+        return Arrays.asList(userId, scope, cursor.getRawValue());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.helpers;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+import org.apache.sling.graphql.api.pagination.Cursor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/** A source of data for a {@link GenericConnection} which can position itself
+ *  right after the item that a {@link Cursor} points to, so that building a
+ *  page doesn't require scanning and computing the cursors of all the items
+ *  which precede it.
+ *
+ *  Sources which can seek natively, like queries which support a "greater
+ *  than" condition on the value used as cursor, should implement this
+ *  interface directly. {@link #fromSortedList} provides an implementation
+ *  for random-access lists.
+ */
+@ConsumerType
+@FunctionalInterface
+public interface SeekableDataSource<T> {
+
+    /** Position the data on the item which follows the one that the supplied cursor points to.
+     *
+     *  @param startAfter the cursor of the item to skip to, or null to start at the beginning of the data
+     *  @return an iterator on the items which follow the one that {@code startAfter} points to, or null if
+     *      {@code startAfter} does not point to an item of this data source
+     */
+    @Nullable
+    Iterator<T> seekAfter(@Nullable Cursor startAfter);
+
+    /** A data source that finds the cursor using a binary search on the supplied list, computing
+     *  the cursors of {@code O(log n)} items only.
+     *
+     *  @param list the data, which must be sorted according to the natural ordering of its cursor strings
+     *  @param cursorStringProvider extracts a String from an object of type T to create a Cursor
+     *  @param <T> the type of the data items
+     *  @return the data source
+     */
+    @NotNull
+    static <T> SeekableDataSource<T> fromSortedList(
+            @NotNull List<T> list, @NotNull Function<T, String> cursorStringProvider) {
+        return fromSortedList(list, cursorStringProvider, Comparator.naturalOrder());
+    }
+
+    /** A data source that finds the cursor using a binary search on the supplied list, computing
+     *  the cursors of {@code O(log n)} items only.
+     *
+     *  @param list the data, which must be sorted according to the supplied ordering of its cursor strings
+     *  @param cursorStringProvider extracts a String from an object of type T to create a Cursor
+     *  @param cursorOrder the ordering of the list's cursor strings
+     *  @param <T> the type of the data items
+     *  @return the data source
+     *  @throws IllegalArgumentException if the list does not support fast random access
+     */
+    @NotNull
+    static <T> SeekableDataSource<T> fromSortedList(
+            @NotNull List<T> list,
+            @NotNull Function<T, String> cursorStringProvider,
+            @NotNull Comparator<String> cursorOrder) {
+        if (!(list instanceof RandomAccess)) {
+            throw new IllegalArgumentException("The list must support fast random access (RandomAccess)");
+        }
+        return startAfter -> {
+            if (startAfter == null) {
+                return list.iterator();
+            }
+            final String target = startAfter.getRawValue();
+            int low = 0;
+            int high = list.size() - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int comparison = cursorOrder.compare(cursorStringProvider.apply(list.get(middle)), target);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return list.listIterator(middle + 1);
+                }
+            }
+            return null;
+        };
+    }
+}
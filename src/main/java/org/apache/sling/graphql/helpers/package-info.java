@@ -21,7 +21,7 @@
  * This package contains APIs which are independent of
  * a specific implementation of the underlying graphQL engine.
  */
-@Version("0.0.1")
+@Version("0.1.0")
 package org.apache.sling.graphql.helpers;
 
 import org.osgi.annotation.versioning.Version;
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class CursorTest {
     private final String testValue = UUID.randomUUID().toString();
@@ -92,4 +93,26 @@ public class CursorTest {
         assertEquals(c1.hashCode(), c2.hashCode());
         assertNotEquals(c1.hashCode(), c3.hashCode());
     }
+
+    @Test
+    public void testUtf8Encoding() {
+        final String value = "/content/caf\u00e9/\u65e5\u672c";
+        final Cursor c = new Cursor(value);
+        assertEquals("L2NvbnRlbnQvY2Fmw6kv5pel5pys", c.getEncoded());
+        assertEquals(value, Cursor.fromEncodedString(c.getEncoded()).getRawValue());
+        assertEquals(c, Cursor.fromEncodedString(" " + c.getEncoded() + "\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonAsciiDecoding() {
+        Cursor.fromEncodedString("L2Nv\u00e9bnRlbnQ=");
+    }
+
+    @Test
+    public void testEncodedValueIsReused() {
+        final String encoded = Cursor.encode(testValue);
+        final Cursor c = Cursor.fromEncodedString(encoded);
+        assertSame(encoded, c.getEncoded());
+        assertSame(c.getEncoded(), c.toString());
+    }
 }
@@ -18,17 +18,29 @@
  */
 package org.apache.sling.graphql.core.engine;
 
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+
+import graphql.language.ScalarTypeDefinition;
+import graphql.schema.GraphQLScalarType;
 import org.apache.sling.graphql.api.ScalarConversionException;
+import org.apache.sling.graphql.api.SlingScalarConverter;
 import org.apache.sling.graphql.core.mocks.AddressDataFetcher;
 import org.apache.sling.graphql.core.mocks.TestUtil;
 import org.apache.sling.graphql.core.mocks.URLScalarConverter;
 import org.apache.sling.graphql.core.mocks.UppercaseScalarConverter;
+import org.apache.sling.graphql.core.scalars.SlingScalarsProvider;
 import org.junit.Test;
+import org.osgi.framework.Constants;
 
 import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class CustomScalarsTest extends ResourceQueryTestBase {
     protected String getTestSchemaName() {
@@ -63,4 +75,24 @@ public class CustomScalarsTest extends ResourceQueryTestBase {
                         is(ScalarConversionException.class.getCanonicalName() + ": "
                                 + URLScalarConverter.class.getSimpleName() + ":Invalid URL:" + url)));
     }
+
+    @Test
+    public void scalarTypesAreReusedUntilConvertersChange() {
+        final SlingScalarsProvider provider = context.getService(SlingScalarsProvider.class);
+        final Map<String, ScalarTypeDefinition> url = Collections.singletonMap(
+                "URL",
+                ScalarTypeDefinition.newScalarTypeDefinition().name("URL").build());
+        final GraphQLScalarType first =
+                provider.getCustomScalars(url).iterator().next();
+        assertThat(provider.getCustomScalars(url).iterator().next(), sameInstance(first));
+
+        TestUtil.registerSlingScalarConverter(context.bundleContext(), "Other", new UppercaseScalarConverter());
+        assertThat(provider.getCustomScalars(url).iterator().next(), sameInstance(first));
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(SlingScalarConverter.NAME_SERVICE_PROPERTY, "URL");
+        props.put(Constants.SERVICE_RANKING, 100);
+        context.bundleContext().registerService(SlingScalarConverter.class, new URLScalarConverter(), props);
+        assertThat(provider.getCustomScalars(url).iterator().next(), not(sameInstance(first)));
+    }
 }
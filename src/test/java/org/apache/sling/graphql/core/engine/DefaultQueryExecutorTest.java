@@ -26,12 +26,15 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import graphql.normalized.ExecutableNormalizedOperationFactory;
 import graphql.schema.idl.TypeDefinitionRegistry;
+import jakarta.json.Json;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.sling.graphql.api.SchemaProvider;
@@ -39,6 +42,8 @@ import org.apache.sling.graphql.api.SelectedField;
 import org.apache.sling.graphql.api.SelectionSet;
 import org.apache.sling.graphql.api.SlingDataFetcher;
 import org.apache.sling.graphql.api.SlingGraphQLException;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
 import org.apache.sling.graphql.api.engine.QueryExecutor;
 import org.apache.sling.graphql.api.engine.ValidationResult;
 import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
@@ -70,6 +75,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -442,6 +448,69 @@ public class DefaultQueryExecutorTest extends ResourceQueryTestBase {
         }
     }
 
+    @Test
+    public void testTrace() {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final String query = "{ currentResource { path resourceType } }";
+        final Map<String, Object> untraced =
+                queryExecutor.execute(query, Collections.emptyMap(), resource, new String[] {});
+        assertThat(toJSON(untraced), hasNoJsonPath("$.extensions.trace"));
+
+        final String json = toJSON(queryExecutor.execute(
+                query,
+                Collections.emptyMap(),
+                resource,
+                new String[] {},
+                ExecutionOptions.Builder.newBuilder().withTrace(true).build()));
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+        assertThat(json, hasJsonPath("$.extensions.trace.version", equalTo(1)));
+        assertThat(json, hasJsonPath("$.extensions.trace.schema.cache", equalTo("hit")));
+        assertThat(json, hasJsonPath("$.extensions.trace.parsing.duration"));
+        assertThat(json, hasJsonPath("$.extensions.trace.validation.duration"));
+        assertThat(json, hasJsonPath("$.extensions.trace.execution.duration"));
+        assertThat(json, hasJsonPath("$.extensions.trace.fields.length()", equalTo(3)));
+        assertThat(json, hasJsonPath("$.extensions.trace.fields[0].path[0]", equalTo("currentResource")));
+        assertThat(json, hasJsonPath("$.extensions.trace.fields[0].parentType", equalTo("Query")));
+        assertThat(json, hasJsonPath("$.extensions.trace.fields[0].fetcher", equalTo("echoNS/echo")));
+        assertThat(json, hasJsonPath("$.extensions.trace.fields[1].path[1]", equalTo("path")));
+        assertThat(json, hasNoJsonPath("$.extensions.trace.fields[1].fetcher"));
+
+        final IncrementalResult incremental = queryExecutor.executeIncrementally(
+                "{ currentResource { path ... @defer(label: \"digest\") { pathMD5 } } }",
+                Collections.emptyMap(),
+                resource,
+                new String[] {},
+                ExecutionOptions.Builder.newBuilder().withTrace(true).build());
+        assertTrue(incremental.hasNext());
+        assertThat(toJSON(incremental.getInitialPayload()), hasJsonPath("$.extensions.trace.fields"));
+    }
+
+    @Test
+    public void testLeafPaths() throws Exception {
+        queryJSON(getTextFromResource("test-inlined-fragments-query.txt"));
+        ServiceReference<?>[] serviceReferences = context.bundleContext()
+                .getServiceReferences(SlingDataFetcher.class.getName(), "(name=combined/fetcher)");
+        EchoDataFetcher echoDataFetcher =
+                (EchoDataFetcher) context.bundleContext().getService(serviceReferences[0]);
+        SelectionSet selectionSet = echoDataFetcher.getSelectionSet();
+
+        final Set<String> leafPaths = selectionSet.getLeafPaths();
+        assertTrue(leafPaths.containsAll(Arrays.asList(
+                "boolValue", "resourcePath", "aTest/test", "allTests/boolValue", "unionTest/primaryFunction")));
+        assertFalse("Fields with sub-selections are not leaves", leafPaths.contains("aTest"));
+        assertEquals(leafPaths, selectionSet.getLeafPaths("Test2"));
+        assertTrue(selectionSet.getLeafPaths("Human").isEmpty());
+        assertSame("Leaf paths are computed once", leafPaths, selectionSet.getLeafPaths());
+
+        queryJSON("{ unionQuery { characters { ... on Human { id name } ... on Droid { primaryFunction } } } }");
+        serviceReferences = context.bundleContext()
+                .getServiceReferences(SlingDataFetcher.class.getName(), "(name=character/fetcher)");
+        echoDataFetcher = (EchoDataFetcher) context.bundleContext().getService(serviceReferences[0]);
+        assertEquals(
+                new HashSet<>(Arrays.asList("characters/id", "characters/name", "characters/primaryFunction")),
+                echoDataFetcher.getSelectionSet().getLeafPaths("CharactersAsUnion"));
+    }
+
     private String getTextFromResource(String fileName) {
         try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
             if (is == null) {
@@ -591,4 +660,56 @@ public class DefaultQueryExecutorTest extends ResourceQueryTestBase {
                 queryJSON("query($floatVar: Float) { lazyQuery(floatVar: $floatVar) { cheapCount }}", variables);
         assertThat(json, hasNoJsonPath("$.errors"));
     }
+
+    private static String toJSON(Map<String, Object> payload) {
+        return Json.createObjectBuilder(payload).build().asJsonObject().toString();
+    }
+
+    @Test
+    public void testDeferredFragment() throws Exception {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        assertNotNull(queryExecutor);
+        final IncrementalResult result = queryExecutor.executeIncrementally(
+                "{ currentResource { path ... @defer(label: \"digest\") { pathMD5 } } }",
+                Collections.emptyMap(),
+                resource,
+                new String[] {});
+        assertTrue(result.hasNext());
+        final String initial = toJSON(result.getInitialPayload());
+        assertThat(initial, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+        assertThat(initial, hasNoJsonPath("$.data.currentResource.pathMD5"));
+        assertThat(initial, hasJsonPath("$.hasNext", is(true)));
+
+        final List<String> subsequent = new ArrayList<>();
+        result.forEachSubsequentPayload(payload -> subsequent.add(toJSON(payload)));
+        assertEquals(1, subsequent.size());
+        final String pathMD5 = DigestDataFetcher.computeDigest("md5", resource.getPath());
+        assertThat(subsequent.get(0), hasJsonPath("$.hasNext", is(false)));
+        assertThat(subsequent.get(0), hasJsonPath("$.incremental[0].label", equalTo("digest")));
+        assertThat(subsequent.get(0), hasJsonPath("$.incremental[0].path[0]", equalTo("currentResource")));
+        assertThat(subsequent.get(0), hasJsonPath("$.incremental[0].data.pathMD5", equalTo("md5#path#" + pathMD5)));
+    }
+
+    @Test
+    public void testDeferIgnoredWithoutIncrementalExecution() throws Exception {
+        final String json = queryJSON("{ currentResource { path ... @defer { resourceType } } }");
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.currentResource.resourceType", equalTo(resource.getResourceType())));
+        assertThat(json, hasNoJsonPath("$.hasNext"));
+    }
+
+    @Test
+    public void testStreamedListIsPartOfTheInitialPayload() {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        assertNotNull(queryExecutor);
+        final IncrementalResult result = queryExecutor.executeIncrementally(
+                "{ unionQuery { characters @stream(initialCount: 1) { ... on Human { id } ... on Droid { id } } } }",
+                Collections.emptyMap(),
+                resource,
+                new String[] {});
+        assertFalse(result.hasNext());
+        final String json = toJSON(result.getInitialPayload());
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.unionQuery.characters[1].id", equalTo("droid-1")));
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.Test;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasNoJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FetcherBulkheadTest extends ResourceQueryTestBase {
+
+    private static final String QUERY = "{ currentResource { path } staticContent { test } }";
+
+    private final CountDownLatch backendRecovered = new CountDownLatch(1);
+    private final Counter rejected = mock(Counter.class);
+    private final Counter timeouts = mock(Counter.class);
+    private FetcherBulkhead bulkhead;
+
+    @Override
+    protected void setupAdditionalServices() {
+        final MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.counter(any(String.class))).thenReturn(mock(Counter.class));
+        when(metricsService.counter(FetcherBulkhead.class.getName() + ".echoNS/echo.rejected"))
+                .thenReturn(rejected);
+        when(metricsService.counter(FetcherBulkhead.class.getName() + ".echoNS/echo.timeouts"))
+                .thenReturn(timeouts);
+        context.registerService(MetricsService.class, metricsService);
+        bulkhead = context.registerInjectActivateService(
+                new FetcherBulkhead(), "name", "echoNS/echo", "maxConcurrent", 1, "maxWait", 0L, "timeout", 100L);
+
+        // a backend which hangs, ignoring interrupts, until it recovers
+        final SlingDataFetcher<Object> hangingFetcher = e -> {
+            final long giveUp = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < giveUp) {
+                try {
+                    if (backendRecovered.await(10, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException ignored) {
+                    // keeps hanging
+                }
+            }
+            return e.getCurrentResource();
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "echoNS/echo", hangingFetcher);
+        TestUtil.registerSlingDataFetcher(
+                context.bundleContext(), "test/static", new EchoDataFetcher(Collections.singletonMap("test", true)));
+    }
+
+    @Test
+    public void slowFetcherFailsFastWhileTheRestOfTheQuerySucceeds() throws Exception {
+        String json = queryJSON(QUERY);
+        assertThat(json, hasJsonPath("$.data.currentResource", nullValue()));
+        assertThat(json, hasJsonPath("$.data.staticContent.test", equalTo(true)));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("timed out after 100 ms")));
+        assertThat(json, hasJsonPath("$.errors[0].path[0]", equalTo("currentResource")));
+        verify(timeouts).increment();
+
+        // the timed out invocation still holds the only permit
+        json = queryJSON(QUERY);
+        assertThat(json, hasJsonPath("$.data.staticContent.test", equalTo(true)));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("'echoNS/echo' is saturated")));
+        verify(rejected).increment();
+
+        backendRecovered.countDown();
+        final long timeout = System.currentTimeMillis() + 5000;
+        do {
+            json = queryJSON(QUERY);
+        } while (json.contains("errors") && System.currentTimeMillis() < timeout);
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+    }
+
+    @Test
+    public void timedOutQueuedInvocationReleasesItsPermit() throws Exception {
+        backendRecovered.countDown();
+        // the invocation is queued behind a busy bulkhead thread which already released its permit
+        final CountDownLatch workerReleased = new CountDownLatch(1);
+        bulkhead.getExecutor().execute(() -> {
+            try {
+                workerReleased.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        String json = queryJSON(QUERY);
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("timed out after 100 ms")));
+        assertEquals("The permit of the cancelled invocation is released", 1, bulkhead.getAvailablePermits());
+
+        workerReleased.countDown();
+        json = queryJSON(QUERY);
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.Json;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasNoJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FetcherCircuitBreakerTest extends ResourceQueryTestBase {
+
+    private static final String QUERY = "{ currentResource { path } }";
+
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final AtomicBoolean resources = new AtomicBoolean();
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final Counter fallbacks = mock(Counter.class);
+    private FetcherCircuitBreaker circuitBreaker;
+
+    @Override
+    protected void setupAdditionalServices() {
+        final MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.counter(any(String.class))).thenReturn(mock(Counter.class));
+        when(metricsService.counter(FetcherCircuitBreaker.class.getName() + ".echoNS/echo.fallbacks"))
+                .thenReturn(fallbacks);
+        context.registerService(MetricsService.class, metricsService);
+        circuitBreaker = context.registerInjectActivateService(
+                new FetcherCircuitBreaker(),
+                "name",
+                "echoNS/echo",
+                "windowSize",
+                4,
+                "minimumCalls",
+                2,
+                "openDuration",
+                2000L,
+                "trialCalls",
+                1,
+                "fallbackCacheSize",
+                10);
+
+        final SlingDataFetcher<Object> backend = e -> {
+            invocations.incrementAndGet();
+            if (failing.get()) {
+                throw new IllegalStateException("backend is down");
+            }
+            final Resource r = e.getCurrentResource();
+            return resources.get() ? r : Collections.singletonMap("path", r.getPath());
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "echoNS/echo", backend);
+    }
+
+    @Test
+    public void openCircuitServesLastGoodValues() throws Exception {
+        assertThat(queryJSON(QUERY), hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+
+        failing.set(true);
+        assertThat(queryJSON(QUERY), hasJsonPath("$.errors[0].message", containsString("backend is down")));
+        assertEquals(FetcherCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, invocations.get());
+
+        String json = queryJSON(QUERY);
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+        verify(fallbacks).increment();
+
+        final String resourceType = resource.getResourceType();
+        final Resource other = Mockito.mock(Resource.class);
+        when(other.getPath()).thenReturn("/some/other/path");
+        when(other.getResourceType()).thenReturn(resourceType);
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final Map<String, Object> result = queryExecutor.execute(QUERY, Collections.emptyMap(), other, new String[] {});
+        json = Json.createObjectBuilder(result).build().toString();
+        assertThat(json, hasJsonPath("$.data.currentResource", nullValue()));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("its circuit is open")));
+        assertThat(json, hasJsonPath("$.errors[0].extensions.classification", equalTo("CircuitOpen")));
+        assertEquals("The fetcher isn't called while the circuit is open", 2, invocations.get());
+
+        Thread.sleep(2100);
+        failing.set(false);
+        assertThat(queryJSON(QUERY), hasNoJsonPath("$.errors"));
+        assertEquals(3, invocations.get());
+        assertEquals(FetcherCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void resourcesAreNotKept() throws Exception {
+        resources.set(true);
+        assertThat(queryJSON(QUERY), hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+
+        failing.set(true);
+        queryJSON(QUERY);
+        assertEquals(FetcherCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        final String json = queryJSON(QUERY);
+        assertThat(json, hasJsonPath("$.data.currentResource", nullValue()));
+        assertThat(json, hasJsonPath("$.errors[0].extensions.classification", equalTo("CircuitOpen")));
+    }
+
+    @Test
+    public void detach() {
+        assertEquals("a", FetcherCircuitBreaker.detach("a"));
+        assertEquals(
+                Collections.singletonMap("list", Arrays.asList(1, null, "b")),
+                FetcherCircuitBreaker.detach(Collections.singletonMap("list", Arrays.asList(1, null, "b"))));
+        assertNull(FetcherCircuitBreaker.detach(resource));
+        assertNull(FetcherCircuitBreaker.detach(Arrays.asList("a", resource)));
+        assertNull(FetcherCircuitBreaker.detach(Collections.singletonMap(1, "a")));
+    }
+}
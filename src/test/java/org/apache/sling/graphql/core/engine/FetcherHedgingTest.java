@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.Test;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasNoJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FetcherHedgingTest extends ResourceQueryTestBase {
+
+    private static final String QUERY = "{ currentResource { path } }";
+    private static final int WARM_UP = 10;
+
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final Set<String> warmUpThreads = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch slowInvocationInterrupted = new CountDownLatch(1);
+    private final Counter hedged = mock(Counter.class);
+    private final Counter won = mock(Counter.class);
+    private FetcherHedging hedging;
+
+    @Override
+    protected void setupAdditionalServices() {
+        final MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.counter(any(String.class))).thenReturn(mock(Counter.class));
+        when(metricsService.counter(FetcherHedging.class.getName() + ".echoNS/echo.hedged"))
+                .thenReturn(hedged);
+        when(metricsService.counter(FetcherHedging.class.getName() + ".echoNS/echo.won"))
+                .thenReturn(won);
+        context.registerService(MetricsService.class, metricsService);
+        hedging = context.registerInjectActivateService(
+                new FetcherHedging(), "name", "echoNS/echo", "minSamples", WARM_UP, "maxHedgeRate", 100);
+
+        // the first invocation after the warm up hits a slow replica
+        final SlingDataFetcher<Object> replicatedBackend = e -> {
+            final int invocation = invocations.incrementAndGet();
+            if (invocation <= WARM_UP) {
+                warmUpThreads.add(Thread.currentThread().getName());
+            }
+            if (invocation == WARM_UP + 1) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ie) {
+                    slowInvocationInterrupted.countDown();
+                    throw ie;
+                }
+            }
+            return e.getCurrentResource();
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "echoNS/echo", replicatedBackend);
+    }
+
+    @Test
+    public void slowInvocationIsHedged() throws Exception {
+        for (int i = 0; i < WARM_UP; i++) {
+            queryJSON(QUERY);
+        }
+        assertTrue("The hedging threshold is known after the warm up", hedging.getThresholdNanos() > 0);
+        assertEquals(
+                "Invocations which can't be hedged run on the request thread",
+                Collections.singleton(Thread.currentThread().getName()),
+                warmUpThreads);
+
+        final long start = System.nanoTime();
+        final String json = queryJSON(QUERY);
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("The hedge returned before the slow invocation, in " + elapsedMillis + "ms", elapsedMillis < 4000);
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+        assertEquals(WARM_UP + 2, invocations.get());
+        verify(hedged).increment();
+        // counted by the hedge's thread, right after it returned the value
+        verify(won, timeout(1000)).increment();
+        assertTrue("The losing invocation is interrupted", slowInvocationInterrupted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.Json;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.api.SlingGraphQLException;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.DigestDataFetcher;
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.Test;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasNoJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FieldDegradationTest extends ResourceQueryTestBase {
+
+    private static final String QUERY = "{ currentResource { path pathMD5 } }";
+
+    private final AtomicInteger digests = new AtomicInteger();
+
+    @Override
+    protected String getTestSchemaName() {
+        return "degradable-schema";
+    }
+
+    @Override
+    protected void setupAdditionalServices() {
+        final DigestDataFetcher digest = new DigestDataFetcher();
+        final SlingDataFetcher<Object> countingDigest = e -> {
+            digests.incrementAndGet();
+            return digest.get(e);
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "echoNS/echo", new EchoDataFetcher(null));
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "sling/digest", countingDigest);
+    }
+
+    @Override
+    protected Map<String, Object> getQueryExecutorProperties() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("degradeInFlight", 2);
+        return props;
+    }
+
+    @Test
+    public void degradableFieldsAreFetchedBelowThresholds() throws Exception {
+        final String json = queryJSON(QUERY);
+        assertThat(json, hasNoJsonPath("$.errors"));
+        assertThat(json, hasJsonPath("$.data.currentResource.pathMD5", notNullValue()));
+        assertEquals(1, digests.get());
+    }
+
+    @Test
+    public void degradableFieldsAreSkippedWhenCallerIsOverloaded() {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final Map<String, Object> result = queryExecutor.execute(
+                QUERY,
+                Collections.emptyMap(),
+                resource,
+                new String[] {},
+                ExecutionOptions.Builder.newBuilder().withOverload(() -> true).build());
+        final String json = Json.createObjectBuilder(result).build().toString();
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+        assertThat(json, hasJsonPath("$.data.currentResource.pathMD5", nullValue()));
+        assertThat(json, hasJsonPath("$.errors.length()", equalTo(1)));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("SlingResource.pathMD5")));
+        assertThat(json, hasJsonPath("$.errors[0].path[1]", equalTo("pathMD5")));
+        assertThat(json, hasJsonPath("$.errors[0].extensions.classification", equalTo("Degraded")));
+        assertEquals("The fetcher of a degraded field isn't called", 0, digests.get());
+    }
+
+    @Test
+    public void incrementalExecutionsAreInFlightUntilCompletedOrClosed() throws Exception {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final String deferred = "{ currentResource { path ... @defer { pathMD5 } } }";
+
+        final IncrementalResult closed =
+                queryExecutor.executeIncrementally(deferred, Collections.emptyMap(), resource, new String[] {});
+        assertTrue(closed.hasNext());
+        assertThat(queryJSON(QUERY), hasJsonPath("$.data.currentResource.pathMD5", nullValue()));
+        closed.close();
+        assertThat(queryJSON(QUERY), hasJsonPath("$.data.currentResource.pathMD5", notNullValue()));
+
+        final IncrementalResult consumed =
+                queryExecutor.executeIncrementally(deferred, Collections.emptyMap(), resource, new String[] {});
+        assertThat(queryJSON(QUERY), hasJsonPath("$.data.currentResource.pathMD5", nullValue()));
+        consumed.forEachSubsequentPayload(payload -> {});
+        consumed.close();
+        assertThat(queryJSON(QUERY), hasJsonPath("$.data.currentResource.pathMD5", notNullValue()));
+    }
+
+    @Test
+    public void degradableFieldsMustBeNullable() throws Exception {
+        final String json = queryJSON(QUERY, "nonnull");
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("pathMD5 is marked as @degradable")));
+        assertThat(json, hasJsonPath("$.errors[0].extensions.exception", is(SlingGraphQLException.class.getName())));
+    }
+
+    @Test
+    public void thresholds() {
+        final FieldDegradation.Thresholds inFlight = new FieldDegradation.Thresholds(0, 2, () -> 100);
+        assertNull(inFlight.evaluate(1, null));
+        assertNull(inFlight.evaluate(1, () -> false));
+        assertNotNull(inFlight.evaluate(1, () -> true));
+        assertEquals("2 queries in flight", inFlight.evaluate(2, null).getReason());
+
+        final FieldDegradation.Thresholds cpu = new FieldDegradation.Thresholds(80, 0, () -> 90);
+        assertEquals("CPU load 90%", cpu.evaluate(100, null).getReason());
+        assertNull(
+                "An unavailable CPU load is ignored",
+                new FieldDegradation.Thresholds(80, 0, () -> -1).evaluate(1, null));
+    }
+}
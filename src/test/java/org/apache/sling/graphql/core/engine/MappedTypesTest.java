@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.graphql.api.SlingTypeResolver;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.DroidDTO;
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.apache.sling.graphql.core.mocks.HumanDTO;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.Test;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+
+public class MappedTypesTest extends ResourceQueryTestBase {
+
+    private final AtomicInteger resolverCalls = new AtomicInteger();
+
+    @Override
+    protected String getTestSchemaName() {
+        return "mapped-types-schema";
+    }
+
+    @Override
+    protected void setupAdditionalServices() {
+        final List<Object> characters = new ArrayList<>();
+        characters.add(new HumanDTO("human-1", "Luke", "Tatooine"));
+        characters.add(new DroidDTO("droid-1", "R2-D2", "whistle"));
+        characters.add(new HumanDTO("human-2", "Leia", "Alderaan"));
+        final CharacterTypeResolver characterResolver = new CharacterTypeResolver();
+        final SlingTypeResolver<Object> resolver = e -> {
+            resolverCalls.incrementAndGet();
+            return characterResolver.getType(e);
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", resolver);
+        TestUtil.registerSlingDataFetcher(
+                context.bundleContext(),
+                "character/fetcher",
+                new EchoDataFetcher(Collections.singletonMap("characters", characters)));
+    }
+
+    @Test
+    public void mappedClassesBypassTheResolver() throws Exception {
+        final String json = queryJSON(
+                "{ unionQuery { characters { ... on Human { name address } ... on Droid { name primaryFunction } } } }");
+        assertThat(json, hasJsonPath("$.data.unionQuery.characters[0].name", equalTo("Luke")));
+        assertThat(json, hasJsonPath("$.data.unionQuery.characters[0].address", equalTo("Tatooine")));
+        assertThat(json, hasJsonPath("$.data.unionQuery.characters[1].name", equalTo("R2-D2")));
+        assertThat(json, hasJsonPath("$.data.unionQuery.characters[1].primaryFunction", equalTo("whistle")));
+        assertThat(json, hasJsonPath("$.data.unionQuery.characters[2].address", equalTo("Alderaan")));
+        // only the droid, which isn't mapped, goes through the resolver
+        assertEquals(1, resolverCalls.get());
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.Json;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.api.SlingGraphQLException;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasNoJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelExecutionTest extends ResourceQueryTestBase {
+
+    private static final int ITEMS = 8;
+
+    private final Set<String> itemsThreads = ConcurrentHashMap.newKeySet();
+    private final Set<String> slowThreads = ConcurrentHashMap.newKeySet();
+    private final Set<String> blockingThreads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Thread testThread = Thread.currentThread();
+    private final CountDownLatch hangingRelease = new CountDownLatch(1);
+    private final AtomicInteger hangingInterrupted = new AtomicInteger();
+
+    @Override
+    protected String getTestSchemaName() {
+        return "parallel-schema";
+    }
+
+    @Override
+    protected void setupAdditionalServices() {
+        final SlingDataFetcher<Object> items = e -> {
+            itemsThreads.add(Thread.currentThread().getName());
+            final List<Map<String, Object>> result = new ArrayList<>();
+            for (int i = 0; i < ITEMS; i++) {
+                result.add(Collections.singletonMap("name", "item" + i));
+            }
+            return result;
+        };
+        final SlingDataFetcher<Object> slow = e -> {
+            slowThreads.add(Thread.currentThread().getName());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } finally {
+                running.decrementAndGet();
+            }
+            final String name = (String) ((Map<?, ?>) e.getParentObject()).get("name");
+            if ("item3".equals(name)) {
+                throw new IllegalStateException("slow failure");
+            }
+            return name.toUpperCase();
+        };
+        final SlingDataFetcher<Object> blocking = e -> {
+            blockingThreads.add(Thread.currentThread().getName());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } finally {
+                running.decrementAndGet();
+            }
+            return "blocking " + ((Map<?, ?>) e.getParentObject()).get("name");
+        };
+        // hangs unless it runs on the request thread, which it would block forever
+        final SlingDataFetcher<Object> hanging = e -> {
+            if (Thread.currentThread() != testThread) {
+                try {
+                    hangingRelease.await();
+                } catch (InterruptedException ie) {
+                    hangingInterrupted.incrementAndGet();
+                    throw ie;
+                }
+            }
+            return "done";
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "test/items", items);
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "test/slow", slow);
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "test/blocking", blocking);
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "test/hanging", hanging);
+    }
+
+    @Override
+    protected Map<String, Object> getQueryExecutorProperties() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("parallelism", 4);
+        props.put("parallelFetchers", new String[] {"test/slow"});
+        props.put("parallelThreshold", 2);
+        props.put("parallelismPerQuery", 3);
+        props.put("virtualThreadFetchers", new String[] {"test/blocking", "test/hanging"});
+        props.put("virtualThreadsPerQuery", 8);
+        return props;
+    }
+
+    @Test
+    public void listElementsAreFetchedInParallel() throws Exception {
+        final String json = queryJSON("{ items { name slowName } }");
+        for (int i = 0; i < ITEMS; i++) {
+            if (i != 3) {
+                assertThat(json, hasJsonPath("$.data.items[" + i + "].slowName", equalTo("ITEM" + i)));
+            }
+        }
+        assertThat(json, hasJsonPath("$.errors.length()", equalTo(1)));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("slow failure")));
+        assertThat(json, hasJsonPath("$.errors[0].path[1]", equalTo(3)));
+
+        final String requestThread = Thread.currentThread().getName();
+        assertEquals("Other fetchers run on the request thread", Collections.singleton(requestThread), itemsThreads);
+        assertTrue("The first invocations run on the request thread", slowThreads.remove(requestThread));
+        assertFalse(slowThreads.isEmpty());
+        assertThat(slowThreads, everyItem(startsWith("sling-graphql-parallel-")));
+        assertTrue("Invocations overlap", maxRunning.get() > 1);
+        assertTrue("At most 3 invocations run in parallel", maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void queryBelowThresholdRunsSequentially() throws Exception {
+        final ParallelExecution parallel = ParallelExecution.onForkJoinPool(2, new String[] {"test/slow"}, 2, 2);
+        try {
+            final ParallelExecution.HandOff handOff = new ParallelExecution.HandOff(null);
+            final ParallelExecution.Query query = parallel.newQuery(handOff);
+            assertEquals("a", query.invoke(() -> "a"));
+            assertEquals("b", query.invoke(() -> "b"));
+            final Object forked = query.invoke(() -> Thread.currentThread().getName());
+            assertTrue(forked instanceof CompletableFuture);
+            assertEquals("The parallelism of the query is capped", "d", query.invoke(() -> "d"));
+            final Object name = handOff.join((CompletableFuture<?>) forked);
+            assertThat((String) name, startsWith("sling-graphql-parallel-"));
+        } finally {
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void busyInvocationIsAbandonedAtTheDeadline() throws Exception {
+        final ParallelExecution parallel = ParallelExecution.onForkJoinPool(1, new String[] {"test/slow"}, 0, 2);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final ParallelExecution.HandOff handOff =
+                    new ParallelExecution.HandOff(QueryCancellation.create(100, null));
+            final Object busy = parallel.newQuery(handOff).invoke(() -> {
+                while (release.getCount() > 0) {
+                    // CPU-bound, ignores interrupts
+                }
+                return "late";
+            });
+            assertTrue(busy instanceof CompletableFuture);
+            try {
+                handOff.join((CompletableFuture<?>) busy);
+                fail("Expecting the invocation to be abandoned");
+            } catch (SlingGraphQLException e) {
+                assertThat(e.getMessage(), containsString("exceeded its deadline of 100 ms"));
+            }
+        } finally {
+            release.countDown();
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void blockingFetchersRunOnVirtualThreads() throws Exception {
+        final String json = queryJSON("{ items { name blockingName } }");
+        assertThat(json, hasNoJsonPath("$.errors"));
+        for (int i = 0; i < ITEMS; i++) {
+            assertThat(json, hasJsonPath("$.data.items[" + i + "].blockingName", equalTo("blocking item" + i)));
+        }
+        assertTrue(
+                "The last invocation runs on the request thread",
+                blockingThreads.remove(Thread.currentThread().getName()));
+        assertEquals(ITEMS - 1, blockingThreads.size());
+        assertThat(blockingThreads, everyItem(startsWith("sling-graphql-blocking-")));
+        assertTrue("Invocations overlap", maxRunning.get() > 1);
+    }
+
+    @After
+    public void releaseHangingFetchers() {
+        hangingRelease.countDown();
+    }
+
+    @Test
+    public void hangingFetchersAreAbandonedAtTheDeadline() throws Exception {
+        final long start = System.nanoTime();
+        final Map<String, Object> result = context.getService(QueryExecutor.class)
+                .execute(
+                        "{ items { name hangingName } }",
+                        Collections.emptyMap(),
+                        resource,
+                        new String[] {},
+                        ExecutionOptions.Builder.newBuilder().withTimeout(200).build());
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("The request thread stops waiting at the deadline: " + elapsedMillis, elapsedMillis < 5000);
+
+        final String json = Json.createObjectBuilder(result).build().toString();
+        assertThat(json, hasJsonPath("$.data.items[7].hangingName", equalTo("done")));
+        assertThat(json, hasJsonPath("$.data.items[0].hangingName", nullValue()));
+        assertThat(json, hasJsonPath("$.errors.length()", equalTo(ITEMS - 1)));
+        assertThat(
+                json,
+                hasJsonPath(
+                        "$.errors[0].message",
+                        containsString(
+                                "Query execution exceeded its deadline of 200 ms, the data fetcher was abandoned")));
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (hangingInterrupted.get() < ITEMS - 1 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals("The abandoned invocations are interrupted", ITEMS - 1, hangingInterrupted.get());
+    }
+
+    @Test
+    public void virtualThreadsFallBackToPlatformThreads() throws Exception {
+        boolean virtualThreads;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            virtualThreads = true;
+        } catch (NoSuchMethodException e) {
+            virtualThreads = false;
+        }
+        final ExecutorService executor = ParallelExecution.newVirtualThreadPerTaskExecutor("test-");
+        assertEquals(virtualThreads, executor != null);
+        if (executor != null) {
+            assertEquals(
+                    "test-1",
+                    executor.submit(() -> Thread.currentThread().getName()).get());
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void incrementalExecutionsRunSequentially() {
+        final String json = Json.createObjectBuilder(context.getService(QueryExecutor.class)
+                        .executeIncrementally(
+                                "{ items { name slowName } }", Collections.emptyMap(), resource, new String[] {})
+                        .getInitialPayload())
+                .build()
+                .toString();
+        assertThat(json, hasJsonPath("$.data.items[7].slowName", equalTo("ITEM7")));
+        assertThat(json, hasNoJsonPath("$.data.items[8]"));
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), slowThreads);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.json.Json;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.DigestDataFetcher;
+import org.apache.sling.graphql.core.mocks.EchoDataFetcher;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
+import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasNoJsonPath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCancellationTest extends ResourceQueryTestBase {
+
+    private static final String QUERY = "{ currentResource { path pathMD5 } staticContent { test } }";
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    @Override
+    protected void setupAdditionalServices() {
+        // waits until the query is cancelled, as a stuck fetcher which cooperates would
+        final SlingDataFetcher<Object> waitingFetcher = e -> {
+            final long giveUp = System.currentTimeMillis() + 5000;
+            while (!e.isCancelled() && System.currentTimeMillis() < giveUp) {
+                Thread.sleep(5);
+            }
+            cancelled.set(e.isCancelled());
+            return e.getCurrentResource();
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "echoNS/echo", waitingFetcher);
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "sling/digest", new DigestDataFetcher());
+        TestUtil.registerSlingDataFetcher(
+                context.bundleContext(), "test/static", new EchoDataFetcher(Collections.singletonMap("test", true)));
+    }
+
+    @Override
+    protected Map<String, Object> getQueryExecutorProperties() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("queryTimeout", 1000L);
+        return props;
+    }
+
+    @Before
+    public void warmUp() throws Exception {
+        // the deadline includes preparing the schema, which is slow on the first execution
+        queryJSON("{ staticContent { test } }");
+    }
+
+    @Test
+    public void partialDataAndTimeoutErrorAfterDeadline() throws Exception {
+        final String json = queryJSON(QUERY);
+        assertTrue("The fetcher sees the cancellation", cancelled.get());
+        assertThat(json, hasJsonPath("$.data.currentResource.path", equalTo(resource.getPath())));
+        assertThat(json, hasJsonPath("$.data.currentResource.pathMD5", nullValue()));
+        assertThat(json, hasJsonPath("$.data.staticContent", nullValue()));
+        assertThat(json, hasJsonPath("$.errors.length()", equalTo(1)));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("deadline of 1000 ms")));
+        assertThat(json, hasJsonPath("$.errors[0].path[1]", equalTo("pathMD5")));
+        assertThat(json, hasJsonPath("$.errors[0].extensions.classification", equalTo("ExecutionAborted")));
+    }
+
+    @Test
+    public void shorterRequestedTimeoutApplies() {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final Map<String, Object> result = queryExecutor.execute(
+                QUERY,
+                Collections.emptyMap(),
+                resource,
+                new String[] {},
+                ExecutionOptions.Builder.newBuilder().withTimeout(300).build());
+        final String json = Json.createObjectBuilder(result).build().toString();
+        assertTrue(cancelled.get());
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("deadline of 300 ms")));
+        assertThat(json, hasNoJsonPath("$.data.staticContent.test"));
+    }
+
+    @Test
+    public void cancelledByCaller() {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final Map<String, Object> result = queryExecutor.execute(
+                QUERY,
+                Collections.emptyMap(),
+                resource,
+                new String[] {},
+                ExecutionOptions.Builder.newBuilder()
+                        .withCancellation(() -> true)
+                        .build());
+        final String json = Json.createObjectBuilder(result).build().toString();
+        assertThat(json, hasJsonPath("$.data.currentResource", nullValue()));
+        assertThat(json, hasJsonPath("$.data.staticContent", nullValue()));
+        assertThat(json, hasJsonPath("$.errors.length()", equalTo(1)));
+        assertThat(json, hasJsonPath("$.errors[0].message", containsString("was cancelled")));
+    }
+
+    @Test
+    public void effectiveTimeout() {
+        assertEquals(0, QueryCancellation.effectiveTimeout(0, 0));
+        assertEquals(50, QueryCancellation.effectiveTimeout(0, 50));
+        assertEquals(100, QueryCancellation.effectiveTimeout(100, 0));
+        assertEquals(50, QueryCancellation.effectiveTimeout(100, 50));
+        assertEquals("Requested timeouts are capped", 100, QueryCancellation.effectiveTimeout(100, 5000));
+    }
+}
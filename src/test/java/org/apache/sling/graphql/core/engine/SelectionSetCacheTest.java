@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.apache.sling.graphql.api.SelectionSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SelectionSetCacheTest {
+
+    private static final String SCHEMA = "type Query { items: [Item] }\n"
+            + "type Item { name: String details: Details }\n"
+            + "type Details { a: String b: String }";
+
+    private final List<SelectionSet> selectionSets = new CopyOnWriteArrayList<>();
+
+    private ExecutionResult execute(boolean withCache) {
+        final RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("items", env -> Arrays.asList("one", "two", "three")))
+                .type("Item", builder -> builder.dataFetcher("name", env -> env.getSource())
+                        .dataFetcher("details", env -> {
+                            selectionSets.add(SelectionSetCache.getSelectionSet(env));
+                            return Collections.singletonMap("a", env.getSource());
+                        }))
+                .build();
+        final GraphQLSchema schema =
+                new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(SCHEMA), wiring);
+        final ExecutionInput input = ExecutionInput.newExecutionInput()
+                .query("{ items { name details { a b } } }")
+                .graphQLContext(builder -> {
+                    if (withCache) {
+                        builder.put(SelectionSetCache.class, new SelectionSetCache());
+                    }
+                })
+                .build();
+        final ExecutionResult result = GraphQL.newGraphQL(schema).build().execute(input);
+        assertTrue(result.getErrors().toString(), result.getErrors().isEmpty());
+        return result;
+    }
+
+    @Test
+    public void testSharedBetweenListItems() {
+        final Map<String, List<Map<String, Object>>> data = execute(true).getData();
+        assertEquals(3, data.get("items").size());
+        assertEquals(3, selectionSets.size());
+        assertSame(selectionSets.get(0), selectionSets.get(1));
+        assertSame(selectionSets.get(0), selectionSets.get(2));
+        assertTrue(selectionSets.get(0).contains("a"));
+        assertTrue(selectionSets.get(0).contains("b"));
+    }
+
+    @Test
+    public void testNotSharedWithoutCache() {
+        execute(false);
+        assertEquals(3, selectionSets.size());
+        assertNotSame(selectionSets.get(0), selectionSets.get(1));
+    }
+
+    @Test
+    public void testSelectionSetBuiltOnDemand() {
+        final DataFetchingEnvironment env = mock(DataFetchingEnvironment.class);
+        final DataFetchingEnvironmentWrapper wrapper = new DataFetchingEnvironmentWrapper(env, null, null, null);
+        verify(env, never()).getSelectionSet();
+        assertSame(wrapper.getSelectionSet(), wrapper.getSelectionSet());
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.sling.testing.mock.osgi.junit.OsgiContext;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.osgi.framework.ServiceRegistration;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.not;
@@ -81,4 +82,14 @@ public class SlingDataFetcherSelectorTest {
         assertEquals(EchoDataFetcher.class, sdf.getClass());
         assertEquals(451, sdf.get(mock(SlingDataFetcherEnvironment.class)));
     }
+
+    @Test
+    public void fetchersFollowRegistrations() throws Exception {
+        final ServiceRegistration<?> registration = TestUtil.registerSlingDataFetcher(
+                context.bundleContext(), "sling/duplicate", 20, new EchoDataFetcher(453));
+        assertEquals(453, selector.getSlingFetcher("sling/duplicate").get(mock(SlingDataFetcherEnvironment.class)));
+
+        registration.unregister();
+        assertEquals(451, selector.getSlingFetcher("sling/duplicate").get(mock(SlingDataFetcherEnvironment.class)));
+    }
 }
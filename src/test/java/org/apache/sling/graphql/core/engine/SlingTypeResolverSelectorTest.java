@@ -28,6 +28,7 @@ import org.apache.sling.testing.mock.osgi.junit.OsgiContext;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.osgi.framework.ServiceRegistration;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.not;
@@ -80,4 +81,14 @@ public class SlingTypeResolverSelectorTest {
         assertEquals(DummyTypeResolver.class, str.getClass());
         assertNull(str.getType(mock(SlingTypeResolverEnvironment.class)));
     }
+
+    @Test
+    public void typeResolversFollowRegistrations() {
+        final ServiceRegistration<?> registration =
+                TestUtil.registerSlingTypeResolver(context.bundleContext(), "example/other", new DummyTypeResolver());
+        assertNotNull(selector.getSlingTypeResolver("example/other"));
+
+        registration.unregister();
+        assertNull(selector.getSlingTypeResolver("example/other"));
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Map;
+
+import graphql.TypeResolutionEnvironment;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.graphql.api.SlingGraphQLException;
+import org.apache.sling.graphql.api.SlingTypeResolver;
+import org.apache.sling.graphql.core.mocks.DroidDTO;
+import org.apache.sling.graphql.core.mocks.HumanDTO;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SlingTypeResolverWrapperTest {
+
+    private final GraphQLObjectType human =
+            GraphQLObjectType.newObject().name("Human").build();
+    private final GraphQLObjectType droid =
+            GraphQLObjectType.newObject().name("Droid").build();
+    private final GraphQLObjectType page =
+            GraphQLObjectType.newObject().name("Page").build();
+    private GraphQLSchema schema;
+    private SlingTypeResolver<Object> resolver;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        schema = mock(GraphQLSchema.class);
+        when(schema.getObjectType("Human")).thenReturn(human);
+        when(schema.getObjectType("Droid")).thenReturn(droid);
+        when(schema.getObjectType("Page")).thenReturn(page);
+        resolver = mock(SlingTypeResolver.class);
+        when(resolver.getType(any())).thenReturn(droid);
+    }
+
+    private TypeResolutionEnvironment env(Object object) {
+        final TypeResolutionEnvironment env = mock(TypeResolutionEnvironment.class);
+        when(env.getObject()).thenReturn(object);
+        when(env.getSchema()).thenReturn(schema);
+        return env;
+    }
+
+    private SlingTypeResolverWrapper wrapper(String types) {
+        return new SlingTypeResolverWrapper(resolver, null, "", "", SlingTypeResolverWrapper.parseTypes(types));
+    }
+
+    @Test
+    public void classMappingBypassesResolver() {
+        final SlingTypeResolverWrapper w = wrapper(HumanDTO.class.getName() + "=Human");
+        for (int i = 0; i < 3; i++) {
+            assertSame(human, w.getType(env(new HumanDTO("h" + i, "Luke", "Tatooine"))));
+        }
+        verify(resolver, never()).getType(any());
+        verify(schema, times(1)).getObjectType("Human");
+    }
+
+    @Test
+    public void superclassAndInterfaceMappings() {
+        class SpecialHuman extends HumanDTO implements Runnable {
+            SpecialHuman() {
+                super("s", "Leia", "Alderaan");
+            }
+
+            @Override
+            public void run() {}
+        }
+        assertSame(human, wrapper(HumanDTO.class.getName() + "=Human").getType(env(new SpecialHuman())));
+        assertSame(page, wrapper("java.lang.Runnable=Page").getType(env(new SpecialHuman())));
+        verify(resolver, never()).getType(any());
+    }
+
+    @Test
+    public void resourceTypeMapping() {
+        final Resource r = mock(Resource.class);
+        when(r.getResourceType()).thenReturn("example/page");
+        final SlingTypeResolverWrapper w = wrapper("example/page=Page");
+        assertSame(page, w.getType(env(r)));
+        assertSame(page, w.getType(env(r)));
+        verify(resolver, never()).getType(any());
+        verify(schema, times(1)).getObjectType("Page");
+    }
+
+    @Test
+    public void unmappedObjectsUseResolver() {
+        final SlingTypeResolverWrapper w = wrapper(HumanDTO.class.getName() + "=Human");
+        assertSame(droid, w.getType(env(new DroidDTO("d", "R2-D2", "whistle"))));
+        assertSame(droid, w.getType(env(new DroidDTO("d", "R2-D2", "whistle"))));
+        verify(resolver, times(2)).getType(any());
+    }
+
+    @Test
+    public void parseTypes() {
+        final Map<String, String> types = SlingTypeResolverWrapper.parseTypes(" a.B = T1 ,, x/y=T2 ");
+        assertEquals(2, types.size());
+        assertEquals("T1", types.get("a.B"));
+        assertEquals("T2", types.get("x/y"));
+        assertTrue(SlingTypeResolverWrapper.parseTypes("").isEmpty());
+        assertTrue(SlingTypeResolverWrapper.parseTypes(null).isEmpty());
+    }
+
+    @Test(expected = SlingGraphQLException.class)
+    public void invalidTypes() {
+        SlingTypeResolverWrapper.parseTypes("a.B");
+    }
+}
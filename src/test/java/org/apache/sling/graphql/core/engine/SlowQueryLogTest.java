@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import org.apache.sling.graphql.api.SlingDataFetcher;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
+import org.apache.sling.graphql.api.engine.QueryExecutor;
+import org.apache.sling.graphql.core.mocks.CharacterTypeResolver;
+import org.apache.sling.graphql.core.mocks.TestUtil;
+import org.apache.sling.graphql.core.util.LogCapture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlowQueryLogTest extends ResourceQueryTestBase {
+
+    private LogCapture capture;
+
+    @Override
+    protected void setupAdditionalServices() {
+        final SlingDataFetcher<Object> slowFetcher = e -> {
+            Thread.sleep(50);
+            return e.getCurrentResource();
+        };
+        TestUtil.registerSlingTypeResolver(context.bundleContext(), "character/resolver", new CharacterTypeResolver());
+        TestUtil.registerSlingDataFetcher(context.bundleContext(), "echoNS/echo", slowFetcher);
+    }
+
+    @Override
+    protected Map<String, Object> getQueryExecutorProperties() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("slowQueryThreshold", 20);
+        props.put("slowQueryTopFetchers", 1);
+        return props;
+    }
+
+    @Before
+    public void setupCapture() {
+        capture = new LogCapture(SlowQueryLog.class.getName(), true);
+    }
+
+    @After
+    public void stopCapture() {
+        capture.stop();
+    }
+
+    @Test
+    public void slowQueryIsLogged() throws Exception {
+        queryJSON("query SlowOne { currentResource { path resourceType } }");
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (capture.list.isEmpty() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, capture.list.size());
+        capture.assertContains(
+                Level.WARN,
+                "Slow GraphQL query: duration=",
+                "threshold=20.0ms",
+                "operation=SlowOne",
+                "resourceType=" + resource.getResourceType(),
+                "selectors=[]",
+                "schema=",
+                "execution=",
+                "slowestFetchers=[echoNS/echo@currentResource=");
+        assertTrue(
+                "Only the slowest fetcher is listed",
+                capture.list.get(0).getFormattedMessage().endsWith("ms]"));
+    }
+
+    @Test
+    public void onlySlowestFetchersAreKept() throws Exception {
+        queryJSON("query Twice { first: currentResource { path } second: currentResource { path } }");
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (capture.list.isEmpty() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, capture.list.size());
+        final String message = capture.list.get(0).getFormattedMessage();
+        final String fetchers = message.substring(message.indexOf("slowestFetchers=["));
+        assertTrue(fetchers, fetchers.matches("slowestFetchers=\\[echoNS/echo@(first|second)=[0-9.]+ms\\]"));
+    }
+
+    @Test
+    public void incrementalQueryIsLoggedWithItsDeferredFetchers() throws Exception {
+        final QueryExecutor queryExecutor = context.getService(QueryExecutor.class);
+        final IncrementalResult result = queryExecutor.executeIncrementally(
+                "query Deferred { ... @defer { currentResource { path } } }",
+                Collections.emptyMap(),
+                resource,
+                new String[] {});
+        assertTrue(result.hasNext());
+        result.forEachSubsequentPayload(payload -> {});
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (capture.list.isEmpty() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, capture.list.size());
+        capture.assertContains(Level.WARN, "operation=Deferred", "slowestFetchers=[echoNS/echo@currentResource=");
+    }
+}
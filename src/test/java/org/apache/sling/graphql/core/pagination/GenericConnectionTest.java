@@ -18,19 +18,26 @@
  */
 package org.apache.sling.graphql.core.pagination;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.LongFunction;
 import java.util.function.Supplier;
 import java.util.stream.StreamSupport;
 
 import org.apache.sling.graphql.api.pagination.Connection;
 import org.apache.sling.graphql.api.pagination.Cursor;
 import org.apache.sling.graphql.api.pagination.Edge;
+import org.apache.sling.graphql.helpers.CursorPositionCache;
 import org.apache.sling.graphql.helpers.GenericConnection;
+import org.apache.sling.graphql.helpers.PagePrefetcher;
+import org.apache.sling.graphql.helpers.SeekableDataSource;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -188,6 +195,8 @@ public class GenericConnectionTest {
         b.withLimit(42);
         b.withLimit(100);
         assertThrows(IllegalArgumentException.class, () -> b.withLimit(101));
+        b.withLast(100);
+        assertThrows(IllegalArgumentException.class, () -> b.withLast(101));
     }
 
     @Test
@@ -205,4 +214,331 @@ public class GenericConnectionTest {
         final Throwable rex = assertThrows(RuntimeException.class, () -> b.build());
         assertTrue(rex.getMessage().contains("Start cursor not found"));
     }
+
+    @Test
+    public void seekableDataSource() {
+        final AtomicInteger seeks = new AtomicInteger();
+        final SeekableDataSource<Integer> source = startAfter -> {
+            seeks.incrementAndGet();
+            assertEquals(cursorize.apply(2), startAfter.getRawValue());
+            return data.subList(2, data.size()).iterator();
+        };
+        final Connection<Integer> c = GenericConnection.Builder.fromDataSource(source, cursorize)
+                .withLimit(2)
+                .withStartAfter(new Cursor(cursorize.apply(2)))
+                .build();
+        assertValues(c, 3, 4, true, true);
+        assertEquals(1, seeks.get());
+    }
+
+    @Test
+    public void seekableDataSourceCursorNotFound() {
+        final GenericConnection.Builder<Integer> b = GenericConnection.Builder.fromDataSource(
+                        startAfter -> null, cursorize)
+                .withStartAfter(new Cursor(cursorize.apply(HIGH_LIMIT)));
+        final Throwable rex = assertThrows(RuntimeException.class, () -> b.build());
+        assertTrue(rex.getMessage().contains("Start cursor not found"));
+    }
+
+    @Test
+    public void sortedListDataSource() {
+        final List<Integer> largeData = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            largeData.add(i);
+        }
+        final AtomicInteger cursorComputations = new AtomicInteger();
+        final Function<Integer, String> countingCursorize = i -> {
+            cursorComputations.incrementAndGet();
+            return String.format("cursor-%05d", i);
+        };
+        final Connection<Integer> c = GenericConnection.Builder.fromDataSource(
+                        SeekableDataSource.fromSortedList(largeData, countingCursorize), countingCursorize)
+                .withLimit(3)
+                .withStartAfter(new Cursor(countingCursorize.apply(8765)))
+                .build();
+        final List<Integer> nodes = new ArrayList<>();
+        c.getEdges().forEach(e -> nodes.add(e.getNode()));
+        assertEquals(Arrays.asList(8766, 8767, 8768), nodes);
+        assertTrue(c.getPageInfo().isHasPreviousPage());
+        assertTrue(c.getPageInfo().isHasNextPage());
+        assertTrue("Expecting O(log n) cursor computations", cursorComputations.get() < 50);
+
+        final Connection<Integer> first = GenericConnection.Builder.fromDataSource(
+                        SeekableDataSource.fromSortedList(largeData, countingCursorize), countingCursorize)
+                .withLimit(2)
+                .build();
+        assertEquals(Integer.valueOf(0), first.getEdges().iterator().next().getNode());
+        assertFalse(first.getPageInfo().isHasPreviousPage());
+
+        final GenericConnection.Builder<Integer> notFound = GenericConnection.Builder.fromDataSource(
+                        SeekableDataSource.fromSortedList(largeData, countingCursorize), countingCursorize)
+                .withStartAfter(new Cursor("cursor-x"));
+        assertThrows(RuntimeException.class, () -> notFound.build());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> SeekableDataSource.fromSortedList(new LinkedList<>(largeData), countingCursorize));
+    }
+
+    @Test
+    public void lastTwo() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLast(2)
+                .build();
+        assertValues(c, 4, 5, true, false);
+    }
+
+    @Test
+    public void lastTwoBeforeFour() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLast(2)
+                .withEndBefore(new Cursor(cursorize.apply(4)))
+                .build();
+        assertValues(c, 2, 3, true, true);
+    }
+
+    @Test
+    public void lastLargerThanRange() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLast(HIGH_LIMIT)
+                .withEndBefore(new Cursor(cursorize.apply(3)))
+                .build();
+        assertValues(c, 1, 2, false, true);
+    }
+
+    @Test
+    public void lastBetweenCursors() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withStartAfter(new Cursor(cursorize.apply(1)))
+                .withEndBefore(new Cursor(cursorize.apply(5)))
+                .withLast(2)
+                .build();
+        assertValues(c, 3, 4, true, true);
+    }
+
+    @Test
+    public void firstThenLast() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(3)
+                .withLast(2)
+                .build();
+        assertValues(c, 2, 3, true, true);
+    }
+
+    @Test
+    public void lastZero() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLast(0)
+                .build();
+        assertValues(c, -1, -1, true, false);
+    }
+
+    @Test
+    public void firstBeforeThree() {
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withEndBefore(new Cursor(cursorize.apply(3)))
+                .build();
+        assertValues(c, 1, 2, false, true);
+    }
+
+    @Test
+    public void endCursorNotFound() {
+        final GenericConnection.Builder<Integer> b = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLast(2)
+                .withEndBefore(new Cursor(cursorize.apply(HIGH_LIMIT)));
+        final Throwable rex = assertThrows(RuntimeException.class, () -> b.build());
+        assertTrue(rex.getMessage().contains("End cursor not found"));
+    }
+
+    @Test
+    public void cursorComputedOncePerEdge() {
+        final AtomicInteger cursorComputations = new AtomicInteger();
+        final Function<Integer, String> countingCursorize = i -> {
+            cursorComputations.incrementAndGet();
+            return cursorize.apply(i);
+        };
+        final Connection<Integer> c = new GenericConnection.Builder<>(data.iterator(), countingCursorize)
+                .withEndBefore(new Cursor(cursorize.apply(4)))
+                .build();
+        for (int i = 0; i < 3; i++) {
+            c.getEdges()
+                    .forEach(e -> assertEquals(
+                            cursorize.apply(e.getNode()), e.getCursor().getRawValue()));
+            c.getPageInfo().getStartCursor();
+            c.getPageInfo().getEndCursor();
+        }
+        // 4 items are visited to find the end cursor, 3 of which become edges
+        assertEquals(4, cursorComputations.get());
+    }
+
+    @Test
+    public void resumeFromPositionCache() {
+        final CursorPositionCache cache = new CursorPositionCache(10, 1, TimeUnit.MINUTES);
+        final AtomicInteger resumptions = new AtomicInteger();
+        final LongFunction<Iterator<Integer>> fromPosition = p -> {
+            resumptions.incrementAndGet();
+            return data.listIterator((int) p);
+        };
+        final Connection<Integer> firstPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withPositionCache(cache, "scope", fromPosition)
+                .build();
+        assertValues(firstPage, 1, 2, false, true);
+        assertEquals(1, cache.size());
+
+        final Iterator<Integer> notToBeUsed = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                throw new AssertionError("Expecting the connection to be resumed from the cache");
+            }
+
+            @Override
+            public Integer next() {
+                throw new AssertionError("Expecting the connection to be resumed from the cache");
+            }
+        };
+        final Connection<Integer> secondPage = new GenericConnection.Builder<>(notToBeUsed, cursorize)
+                .withLimit(2)
+                .withStartAfter(firstPage.getPageInfo().getEndCursor())
+                .withPositionCache(cache, "scope", fromPosition)
+                .build();
+        assertValues(secondPage, 3, 4, true, true);
+        assertEquals(1, resumptions.get());
+
+        // the third page is resumed from the second page's end cursor
+        final Connection<Integer> thirdPage = new GenericConnection.Builder<>(notToBeUsed, cursorize)
+                .withLimit(2)
+                .withStartAfter(secondPage.getPageInfo().getEndCursor())
+                .withPositionCache(cache, "scope", fromPosition)
+                .build();
+        assertValues(thirdPage, 5, 5, true, false);
+        assertEquals(2, resumptions.get());
+    }
+
+    @Test
+    public void positionCacheFallback() {
+        final CursorPositionCache cache = new CursorPositionCache(1, 1, TimeUnit.MINUTES);
+        final Connection<Integer> firstPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withPositionCache(cache, "scope", p -> data.listIterator((int) p))
+                .build();
+
+        // another scope uses the same cursor: it's not resumed from the first page's position
+        final List<Integer> otherData = Arrays.asList(0, 1, 2, 3);
+        final Connection<Integer> otherScope = new GenericConnection.Builder<>(otherData.iterator(), cursorize)
+                .withLimit(1)
+                .withStartAfter(firstPage.getPageInfo().getEndCursor())
+                .withPositionCache(cache, "other", p -> otherData.listIterator((int) p))
+                .build();
+        assertValues(otherScope, 3, 3, true, false);
+
+        // the first page's position was evicted, so the data is scanned
+        final Connection<Integer> evicted = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withStartAfter(firstPage.getPageInfo().getEndCursor())
+                .withPositionCache(cache, "scope", p -> {
+                    throw new AssertionError("Position should have been evicted");
+                })
+                .build();
+        assertValues(evicted, 3, 4, true, true);
+
+        // the data changed, so the cached position doesn't match the cursor anymore
+        final List<Integer> changedData = Arrays.asList(0, 1, 2, 3, 4, 5);
+        final Connection<Integer> changed = new GenericConnection.Builder<>(changedData.iterator(), cursorize)
+                .withLimit(1)
+                .withStartAfter(evicted.getPageInfo().getEndCursor())
+                .withPositionCache(cache, "scope", p -> changedData.listIterator((int) p))
+                .build();
+        assertValues(changed, 5, 5, true, false);
+    }
+
+    @Test
+    public void prefetchNextPage() {
+        final PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(Runnable::run, 1, 10, 1, TimeUnit.MINUTES);
+        final AtomicInteger prefetches = new AtomicInteger();
+        final SeekableDataSource<Integer> source = startAfter -> {
+            prefetches.incrementAndGet();
+            return data.listIterator(
+                    data.indexOf(Integer.valueOf(startAfter.getRawValue().substring(7))) + 1);
+        };
+        final Connection<Integer> firstPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withPrefetch(prefetcher, "alice", "scope", source)
+                .build();
+        assertValues(firstPage, 1, 2, false, true);
+        assertEquals(1, prefetches.get());
+        assertEquals(3, prefetcher.getReservedNodes());
+
+        final Connection<Integer> secondPage = new GenericConnection.Builder<>(
+                        Collections.<Integer>emptyIterator(), cursorize)
+                .withLimit(2)
+                .withStartAfter(firstPage.getPageInfo().getEndCursor())
+                .withPrefetch(prefetcher, "alice", "scope", source)
+                .build();
+        assertValues(secondPage, 3, 4, true, true);
+        assertEquals(2, prefetches.get());
+        // the third page only has one node, and no next page
+        assertEquals(1, prefetcher.getReservedNodes());
+
+        final Connection<Integer> thirdPage = new GenericConnection.Builder<>(
+                        Collections.<Integer>emptyIterator(), cursorize)
+                .withLimit(2)
+                .withStartAfter(secondPage.getPageInfo().getEndCursor())
+                .withPrefetch(prefetcher, "alice", "scope", source)
+                .build();
+        assertValues(thirdPage, 5, 5, true, false);
+        assertEquals(2, prefetches.get());
+        assertEquals(0, prefetcher.getReservedNodes());
+    }
+
+    @Test
+    public void prefetchWithinBudget() {
+        final PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(Runnable::run, 1, 2, 1, TimeUnit.MINUTES);
+        final SeekableDataSource<Integer> source = startAfter -> {
+            throw new AssertionError("Not expecting a prefetch that exceeds the budget");
+        };
+        final Connection<Integer> firstPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withPrefetch(prefetcher, "alice", "scope", source)
+                .build();
+        assertValues(firstPage, 1, 2, false, true);
+        assertEquals(0, prefetcher.getReservedNodes());
+    }
+
+    @Test
+    public void prefetchedPageTooSmall() {
+        final PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(Runnable::run, 1, 10, 1, TimeUnit.MINUTES);
+        final Connection<Integer> firstPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(1)
+                .withPrefetch(prefetcher, "alice", "scope", startAfter -> data.listIterator(1))
+                .build();
+        assertValues(firstPage, 1, 1, false, true);
+
+        // a larger page than the prefetched one is read from the data
+        final Connection<Integer> secondPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(3)
+                .withStartAfter(firstPage.getPageInfo().getEndCursor())
+                .withPrefetch(prefetcher, "alice", "scope", startAfter -> data.listIterator(4))
+                .build();
+        assertValues(secondPage, 2, 4, true, true);
+    }
+
+    @Test
+    public void prefetchedPageIsOnlyUsedBySameUser() {
+        final PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(Runnable::run, 1, 10, 1, TimeUnit.MINUTES);
+        final Connection<Integer> firstPage = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withPrefetch(prefetcher, "alice", "scope", startAfter -> data.listIterator(2))
+                .build();
+        assertValues(firstPage, 1, 2, false, true);
+        assertEquals(3, prefetcher.getReservedNodes());
+
+        // another user reads the data itself, with its own permissions
+        final Connection<Integer> otherUser = new GenericConnection.Builder<>(data.iterator(), cursorize)
+                .withLimit(2)
+                .withStartAfter(firstPage.getPageInfo().getEndCursor())
+                .withPrefetch(prefetcher, "bob", "scope", startAfter -> Collections.<Integer>emptyIterator())
+                .build();
+        assertValues(otherUser, 3, 4, true, true);
+        assertEquals("The page prefetched for alice is kept", 3, prefetcher.getReservedNodes());
+    }
 }
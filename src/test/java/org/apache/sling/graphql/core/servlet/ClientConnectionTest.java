@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientConnectionTest {
+
+    @Test
+    public void onlyProbesOnRequestThread() throws Exception {
+        final StringWriter output = new StringWriter();
+        final SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(output));
+        final ClientConnection connection = new ClientConnection(response, 1);
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        assertFalse(CompletableFuture.supplyAsync(connection::getAsBoolean).get(5, TimeUnit.SECONDS));
+        assertEquals("Other threads don't write the response", "", output.toString());
+
+        assertFalse(connection.getAsBoolean());
+        assertEquals("The request thread probes the connection", " ", output.toString());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testLimitAdaptsToLatency() throws InterruptedException {
+        final ConcurrencyLimiter fast = new ConcurrencyLimiter(2, 1, 4, 60000, 0, 0);
+        ConcurrencyLimiter.Permit first = fast.acquire(false);
+        ConcurrencyLimiter.Permit second = fast.acquire(false);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull("The queue is disabled", fast.acquire(true));
+        first.close();
+        assertEquals("Fast queries increase the limit", 3, fast.getLimit());
+        second.close();
+        assertEquals(0, fast.getInFlight());
+        for (int i = 0; i < 10; i++) {
+            fast.acquire(false).close();
+        }
+        assertEquals("The limit doesn't grow unless it's used", 3, fast.getLimit());
+
+        final ConcurrencyLimiter slow = new ConcurrencyLimiter(3, 1, 4, 0, 0, 0);
+        ConcurrencyLimiter.Permit permit = slow.acquire(false);
+        TimeUnit.MILLISECONDS.sleep(1);
+        permit.close();
+        assertEquals("Slow queries decrease the limit", 2, slow.getLimit());
+        for (int i = 0; i < 20; i++) {
+            permit = slow.acquire(false);
+            TimeUnit.MILLISECONDS.sleep(1);
+            permit.close();
+        }
+        assertEquals("The limit doesn't go below its minimum", 1, slow.getLimit());
+    }
+
+    @Test
+    public void testQueueTimeout() throws InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 60000, 1, 10);
+        final ConcurrencyLimiter.Permit permit = limiter.acquire(false);
+        assertNotNull(permit);
+        assertNull(limiter.acquire(true));
+        assertEquals(0, limiter.getQueued());
+        permit.close();
+        assertNotNull(limiter.acquire(false));
+    }
+
+    @Test
+    public void testPriorityQueriesAreServedFirst() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 60000, 2, 10000);
+        final ConcurrencyLimiter.Permit permit = limiter.acquire(false);
+        final List<String> served = new CopyOnWriteArrayList<>();
+        final Thread adHoc = waiter(limiter, false, "ad-hoc", served);
+        awaitQueued(limiter, 1);
+        final Thread persisted = waiter(limiter, true, "persisted", served);
+        awaitQueued(limiter, 2);
+        permit.close();
+        adHoc.join(5000);
+        persisted.join(5000);
+        assertEquals(2, served.size());
+        assertEquals("persisted", served.get(0));
+        assertEquals("ad-hoc", served.get(1));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private static Thread waiter(ConcurrencyLimiter limiter, boolean priority, String name, List<String> served) {
+        final Thread t = new Thread(() -> {
+            try {
+                final ConcurrencyLimiter.Permit permit = limiter.acquire(priority);
+                if (permit != null) {
+                    served.add(name);
+                    permit.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitQueued(ConcurrencyLimiter limiter, int queued) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (limiter.getQueued() < queued && System.currentTimeMillis() < timeout) {
+            Thread.sleep(1);
+        }
+        assertEquals(queued, limiter.getQueued());
+    }
+}
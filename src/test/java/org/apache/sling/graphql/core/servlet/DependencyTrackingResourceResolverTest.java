@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DependencyTrackingResourceResolverTest {
+
+    @Rule
+    public SlingContext context = new SlingContext();
+
+    private DependencyTrackingResourceResolver tracker;
+
+    @Before
+    public void setUp() {
+        context.build()
+                .resource("/content/a")
+                .resource("/content/a/b")
+                .resource("/content/a/c")
+                .resource("/content/d")
+                .commit();
+        tracker = new DependencyTrackingResourceResolver(context.resourceResolver());
+    }
+
+    @Test
+    public void testTracksResourcesReachedFromTrackedResource() {
+        final Resource a = tracker.track(context.resourceResolver().getResource("/content/a"));
+        assertSame(tracker, a.getResourceResolver());
+        assertEquals("/content", a.getParent().getPath());
+        assertEquals("/content/a/b", a.getChild("b").getPath());
+        assertEquals(
+                Arrays.asList("/content", "/content/a", "/content/a/b"),
+                Arrays.asList(tracker.getPaths().toArray()));
+    }
+
+    @Test
+    public void testTracksListedChildren() {
+        final Resource a = tracker.track(context.resourceResolver().getResource("/content/a"));
+        final Iterator<Resource> children = a.listChildren();
+        while (children.hasNext()) {
+            assertSame(tracker, children.next().getResourceResolver());
+        }
+        assertEquals(
+                Arrays.asList("/content/a", "/content/a/b", "/content/a/c"),
+                Arrays.asList(tracker.getPaths().toArray()));
+    }
+
+    @Test
+    public void testTracksResourcesReadThroughResolver() {
+        final Resource d = tracker.track(context.resourceResolver().getResource("/content/a"))
+                .getResourceResolver()
+                .getResource("/content/d");
+        assertEquals("/content/d", d.getPath());
+        assertNull(tracker.getResource("/content/missing"));
+        assertEquals(
+                Arrays.asList("/content/a", "/content/d"),
+                Arrays.asList(tracker.getPaths().toArray()));
+    }
+}
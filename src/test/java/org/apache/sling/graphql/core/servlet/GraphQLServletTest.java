@@ -21,17 +21,29 @@ package org.apache.sling.graphql.core.servlet;
 import javax.servlet.Servlet;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.api.servlets.ServletResolverConstants;
 import org.apache.sling.commons.metrics.Counter;
 import org.apache.sling.commons.metrics.MetricsService;
 import org.apache.sling.commons.metrics.Timer;
+import org.apache.sling.graphql.api.cache.GraphQLCacheProvider;
+import org.apache.sling.graphql.api.engine.ExecutionOptions;
+import org.apache.sling.graphql.api.engine.IncrementalResult;
 import org.apache.sling.graphql.api.engine.QueryExecutor;
 import org.apache.sling.graphql.api.engine.ValidationResult;
 import org.apache.sling.graphql.core.cache.SimpleGraphQLCacheProvider;
@@ -43,16 +55,24 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.endsWith;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -78,6 +98,8 @@ public class GraphQLServletTest {
     @Mock
     private Timer timer;
 
+    private QueryExecutor queryExecutor;
+
     @Before
     public void setUp() {
         when(timer.time()).thenReturn(mock(Timer.Context.class));
@@ -87,7 +109,8 @@ public class GraphQLServletTest {
 
         context.registerService(MetricRegistry.class, metricRegistry, "name", "sling");
 
-        QueryExecutor queryExecutor = mock(QueryExecutor.class);
+        // the default methods delegate to the stubbed ones
+        queryExecutor = mock(QueryExecutor.class, Mockito.CALLS_REAL_METHODS);
         ValidationResult validationResult = mock(ValidationResult.class);
         when(validationResult.isValid()).thenReturn(true);
         when(queryExecutor.validate(any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
@@ -250,4 +273,426 @@ public class GraphQLServletTest {
     public void testEmptyQueryNothingToRead() throws IOException {
         assertPostWithBody("application/json  ; charset=UTF-8", "", 400);
     }
+
+    @Test
+    public void testMultipartMixedResponse() throws IOException {
+        final Map<String, Object> initial = new LinkedHashMap<>();
+        initial.put("data", Collections.singletonMap("a", "A"));
+        initial.put("hasNext", true);
+        final Map<String, Object> subsequent = new LinkedHashMap<>();
+        subsequent.put("incremental", Collections.singletonList(Collections.singletonMap("data", "B")));
+        subsequent.put("hasNext", false);
+        final IncrementalResult incrementalResult = mock(IncrementalResult.class);
+        when(incrementalResult.getInitialPayload()).thenReturn(initial);
+        doAnswer(invocation -> {
+                    Consumer<Map<String, Object>> consumer = invocation.getArgument(0);
+                    consumer.accept(subsequent);
+                    return null;
+                })
+                .when(incrementalResult)
+                .forEachSubsequentPayload(any());
+        when(queryExecutor.executeIncrementally(
+                        any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
+                .thenReturn(incrementalResult);
+
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(), ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES, TEST_RESOURCE_TYPE);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+
+        MockSlingHttpServletResponse response = context.response();
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+        request.setMethod("GET");
+        request.setQueryString("query=%7B%20a%20...%20%40defer%20%7B%20b%20%7D%20%7D");
+        request.setParameterMap(Collections.singletonMap("query", "{ a ... @defer { b } }"));
+        request.setHeader("Accept", "multipart/mixed;deferSpec=20220824, application/json");
+        request.setResource(resource);
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setExtension("gql");
+        requestPathInfo.setResourcePath(resource.getPath());
+
+        servlet.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/mixed; boundary=\"-\""));
+        final String part = "\r\nContent-Type: application/json; charset=utf-8\r\n\r\n";
+        assertEquals(
+                "\r\n---" + part + "{\"data\":{\"a\":\"A\"},\"hasNext\":true}\r\n---" + part
+                        + "{\"incremental\":[{\"data\":\"B\"}],\"hasNext\":false}\r\n-----\r\n",
+                response.getOutputAsString());
+        verify(queryExecutor, never())
+                .execute(any(String.class), any(Map.class), any(Resource.class), any(String[].class));
+    }
+
+    @Test
+    public void testPersistedQueryVariesOnAccept() throws IOException {
+        when(queryExecutor.execute(any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
+                .thenReturn(Collections.singletonMap("data", "A"));
+        final IncrementalResult incrementalResult = mock(IncrementalResult.class);
+        when(incrementalResult.getInitialPayload()).thenReturn(Collections.singletonMap("data", "A"));
+        when(queryExecutor.executeIncrementally(
+                        any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
+                .thenReturn(incrementalResult);
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(),
+                ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES,
+                TEST_RESOURCE_TYPE,
+                "persistedQueries.suffix",
+                "/persisted");
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+        final String hash =
+                context.getService(GraphQLCacheProvider.class).cacheQuery(TEST_QUERY, TEST_RESOURCE_TYPE, null);
+        assertNotNull(hash);
+
+        MockSlingHttpServletResponse json = new MockSlingHttpServletResponse();
+        servlet.doGet(persistedQueryRequest(hash, null), json);
+        assertEquals(200, json.getStatus());
+        assertEquals("{\"data\":\"A\"}", json.getOutputAsString());
+        assertEquals("max-age=60", json.getHeader("Cache-Control"));
+        assertEquals("Accept", json.getHeader("Vary"));
+
+        MockSlingHttpServletResponse multipart = new MockSlingHttpServletResponse();
+        servlet.doGet(persistedQueryRequest(hash, "multipart/mixed"), multipart);
+        assertEquals(200, multipart.getStatus());
+        assertTrue(multipart.getContentType().startsWith("multipart/mixed"));
+        assertEquals("max-age=60", multipart.getHeader("Cache-Control"));
+        assertEquals("Accept", multipart.getHeader("Vary"));
+    }
+
+    @Test
+    public void testAcceptsMultipartMixed() {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+        assertFalse(GraphQLServlet.accepts(request, GraphQLServlet.MIME_TYPE_MULTIPART_MIXED));
+        request.setHeader("Accept", "application/json");
+        assertFalse(GraphQLServlet.accepts(request, GraphQLServlet.MIME_TYPE_MULTIPART_MIXED));
+        request.setHeader("Accept", "application/json, Multipart/Mixed ; deferSpec=20220824");
+        assertTrue(GraphQLServlet.accepts(request, GraphQLServlet.MIME_TYPE_MULTIPART_MIXED));
+        assertFalse(GraphQLServlet.accepts(request, GraphQLServlet.MIME_TYPE_EVENT_STREAM));
+    }
+
+    @Test
+    public void testLiveQueryEventStream() throws Exception {
+        when(queryExecutor.execute(any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
+                .thenReturn(Collections.singletonMap("data", "A"))
+                .thenReturn(Collections.singletonMap("data", "B"));
+
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(),
+                ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES,
+                TEST_RESOURCE_TYPE,
+                "liveQueries.maxConcurrent",
+                1,
+                "liveQueries.maxDuration",
+                1,
+                "liveQueries.heartbeatInterval",
+                1);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+
+        MockSlingHttpServletResponse response = context.response();
+        MockSlingHttpServletRequest request = liveQueryRequest();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Thread session = new Thread(() -> {
+            try {
+                servlet.doGet(request, response);
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        session.start();
+
+        ResourceChangeListener listener = null;
+        for (int i = 0; i < 100 && listener == null; i++) {
+            listener = context.getService(ResourceChangeListener.class);
+            if (listener == null) {
+                Thread.sleep(10);
+            }
+        }
+        assertNotNull("The live query should register a resource change listener", listener);
+        final String ancestorFilter = "(" + ResourceChangeListener.PATHS + "=glob:/content)";
+        ResourceChangeListener[] ancestorListeners = new ResourceChangeListener[0];
+        for (int i = 0; i < 100 && ancestorListeners.length == 0; i++) {
+            ancestorListeners = context.getServices(ResourceChangeListener.class, ancestorFilter);
+            if (ancestorListeners.length == 0) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals("The removal of the ancestors should be listened to", 1, ancestorListeners.length);
+        listener.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, resource.getPath(), false)));
+        session.join(5000);
+
+        assertFalse(session.isAlive());
+        assertNull(failure.get());
+        assertNull(context.getService(ResourceChangeListener.class));
+        assertEquals("text/event-stream;charset=UTF-8", response.getContentType());
+        assertEquals("no-store", response.getHeader("Cache-Control"));
+        final String output = response.getOutputAsString().replace(": keep-alive\n\n", "");
+        assertEquals(
+                "event: next\ndata: {\"data\":\"A\"}\n\n" + "event: next\ndata: {\"data\":\"B\"}\n\n"
+                        + "event: complete\ndata: \n\n",
+                output);
+    }
+
+    @Test
+    public void testPersistedLiveQueryIsNotCacheable() throws IOException {
+        when(queryExecutor.execute(any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
+                .thenReturn(Collections.singletonMap("data", "A"));
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(),
+                ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES,
+                TEST_RESOURCE_TYPE,
+                "persistedQueries.suffix",
+                "/persisted",
+                "liveQueries.maxConcurrent",
+                1,
+                "liveQueries.maxDuration",
+                1,
+                "liveQueries.heartbeatInterval",
+                1);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+        final String hash = context.getService(GraphQLCacheProvider.class)
+                .cacheQuery("{\"query\": \"query @live { currentResource { name } }\" }", TEST_RESOURCE_TYPE, null);
+
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(persistedQueryRequest(hash, "text/event-stream"), response);
+        assertEquals("text/event-stream;charset=UTF-8", response.getContentType());
+        assertEquals("no-store", response.getHeader("Cache-Control"));
+        assertEquals(1, response.getHeaders("Cache-Control").size());
+        assertEquals("Accept", response.getHeader("Vary"));
+        assertTrue(response.getOutputAsString().endsWith("event: complete\ndata: \n\n"));
+    }
+
+    @Test
+    public void testLiveQueriesDisabledByDefault() throws IOException {
+        when(queryExecutor.execute(any(String.class), any(Map.class), any(Resource.class), any(String[].class)))
+                .thenReturn(Collections.singletonMap("data", "A"));
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(), ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES, TEST_RESOURCE_TYPE);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+
+        MockSlingHttpServletResponse response = context.response();
+        servlet.doGet(liveQueryRequest(), response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"data\":\"A\"}", response.getOutputAsString());
+        assertNull(context.getService(ResourceChangeListener.class));
+    }
+
+    @Test
+    public void testTraceRequiresAllowedUser() throws IOException {
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(),
+                ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES,
+                TEST_RESOURCE_TYPE,
+                "trace.allowedUsers",
+                new String[] {"admin"});
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+
+        for (String user : new String[] {"admin", "anonymous", null}) {
+            MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+            request.setMethod("GET");
+            request.setParameterMap(Collections.singletonMap("query", "{ currentResource { resourceType } }"));
+            request.setHeader(GraphQLServlet.TRACE_HEADER, "true");
+            request.setRemoteUser(user);
+            request.setResource(resource);
+            MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+            requestPathInfo.setExtension("gql");
+            requestPathInfo.setResourcePath(resource.getPath());
+            servlet.doGet(request, context.response());
+        }
+
+        ArgumentCaptor<ExecutionOptions> options = ArgumentCaptor.forClass(ExecutionOptions.class);
+        verify(queryExecutor, times(3))
+                .execute(
+                        any(String.class), any(Map.class), any(Resource.class), any(String[].class), options.capture());
+        assertTrue(options.getAllValues().get(0).isTrace());
+        assertFalse(options.getAllValues().get(1).isTrace());
+        assertFalse(options.getAllValues().get(2).isTrace());
+    }
+
+    @Test
+    public void testTimeoutHeader() throws IOException {
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(), ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES, TEST_RESOURCE_TYPE);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+
+        for (String timeout : new String[] {"250", "not-a-number", "-1"}) {
+            MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+            request.setMethod("GET");
+            request.setParameterMap(Collections.singletonMap("query", "{ currentResource { resourceType } }"));
+            request.setHeader(GraphQLServlet.TIMEOUT_HEADER, timeout);
+            request.setResource(resource);
+            MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+            requestPathInfo.setExtension("gql");
+            requestPathInfo.setResourcePath(resource.getPath());
+            servlet.doGet(request, context.response());
+        }
+
+        ArgumentCaptor<ExecutionOptions> options = ArgumentCaptor.forClass(ExecutionOptions.class);
+        verify(queryExecutor, times(3))
+                .execute(
+                        any(String.class), any(Map.class), any(Resource.class), any(String[].class), options.capture());
+        assertEquals(250, options.getAllValues().get(0).getTimeout());
+        assertEquals(0, options.getAllValues().get(1).getTimeout());
+        assertEquals(0, options.getAllValues().get(2).getTimeout());
+    }
+
+    @Test
+    public void testAbortOnClientDisconnect() throws IOException {
+        final Counter aborted = mock(Counter.class);
+        when(metricsService.counter(endsWith(".requests_aborted"))).thenReturn(aborted);
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(),
+                ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES,
+                TEST_RESOURCE_TYPE,
+                "clientDisconnect.probeInterval",
+                1);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+        doAnswer(invocation -> {
+                    final ExecutionOptions options = invocation.getArgument(4);
+                    Thread.sleep(5);
+                    options.getCancellation().getAsBoolean();
+                    return Collections.singletonMap("data", "A");
+                })
+                .when(queryExecutor)
+                .execute(
+                        any(String.class),
+                        any(Map.class),
+                        any(Resource.class),
+                        any(String[].class),
+                        any(ExecutionOptions.class));
+
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+        request.setMethod("GET");
+        request.setParameterMap(Collections.singletonMap("query", "{ currentResource { resourceType } }"));
+        request.setResource(resource);
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setExtension("gql");
+        requestPathInfo.setResourcePath(resource.getPath());
+
+        MockSlingHttpServletResponse connected = context.response();
+        servlet.doGet(request, connected);
+        assertEquals("The probe is ignored by JSON parsers", " {\"data\":\"A\"}", connected.getOutputAsString());
+        verify(aborted, never()).increment();
+
+        SlingHttpServletResponse disconnected = mock(SlingHttpServletResponse.class);
+        when(disconnected.getWriter()).thenReturn(new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void close() {}
+        }));
+        servlet.doGet(request, disconnected);
+        verify(aborted).increment();
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws IOException {
+        final Counter rejected = mock(Counter.class);
+        when(metricsService.counter(endsWith(".requests_rejected"))).thenReturn(rejected);
+        context.registerInjectActivateService(new SimpleGraphQLCacheProvider());
+        context.registerInjectActivateService(
+                new GraphQLServlet(),
+                ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES,
+                TEST_RESOURCE_TYPE,
+                "concurrencyLimit.max",
+                1,
+                "concurrencyLimit.initial",
+                1,
+                "concurrencyLimit.queueSize",
+                0);
+        GraphQLServlet servlet = (GraphQLServlet) context.getService(Servlet.class);
+        assertNotNull(servlet);
+        assertEquals(
+                1,
+                metricRegistry
+                        .getGauges((name, metric) -> name.endsWith(".concurrency_limit"))
+                        .values()
+                        .iterator()
+                        .next()
+                        .getValue());
+
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+        request.setMethod("GET");
+        request.setParameterMap(Collections.singletonMap("query", "{ currentResource { resourceType } }"));
+        request.setResource(resource);
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setExtension("gql");
+        requestPathInfo.setResourcePath(resource.getPath());
+
+        // a second request arrives while the first one executes
+        final MockSlingHttpServletResponse concurrent = new MockSlingHttpServletResponse();
+        doAnswer(invocation -> {
+                    servlet.doGet(request, concurrent);
+                    return Collections.singletonMap("data", "A");
+                })
+                .doReturn(Collections.singletonMap("data", "B"))
+                .when(queryExecutor)
+                .execute(
+                        any(String.class),
+                        any(Map.class),
+                        any(Resource.class),
+                        any(String[].class),
+                        any(ExecutionOptions.class));
+
+        MockSlingHttpServletResponse response = context.response();
+        servlet.doGet(request, response);
+        assertEquals("{\"data\":\"A\"}", response.getOutputAsString());
+        assertEquals(503, concurrent.getStatus());
+        assertEquals("1", concurrent.getHeader("Retry-After"));
+        verify(rejected).increment();
+
+        MockSlingHttpServletResponse next = new MockSlingHttpServletResponse();
+        servlet.doGet(request, next);
+        assertEquals("The permit is released", "{\"data\":\"B\"}", next.getOutputAsString());
+    }
+
+    private MockSlingHttpServletRequest persistedQueryRequest(String hash, String accept) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+        request.setMethod("GET");
+        if (accept != null) {
+            request.setHeader("Accept", accept);
+        }
+        request.setResource(resource);
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setExtension("gql");
+        requestPathInfo.setResourcePath(resource.getPath());
+        requestPathInfo.setSuffix("/persisted/" + hash + ".gql");
+        return request;
+    }
+
+    private MockSlingHttpServletRequest liveQueryRequest() {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.bundleContext());
+        request.setMethod("GET");
+        request.setParameterMap(Collections.singletonMap("query", "query @live { currentResource { name } }"));
+        request.setHeader("Accept", "text/event-stream");
+        request.setResource(resource);
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setExtension("gql");
+        requestPathInfo.setResourcePath(resource.getPath());
+        return request;
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.graphql.core.servlet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveQueryTest {
+
+    @Test
+    public void testIsLive() {
+        assertTrue(LiveQuery.isLive("query @live { currentResource { path } }"));
+        assertTrue(LiveQuery.isLive("query Named($a: String) @live { currentResource { path } }"));
+        assertFalse(LiveQuery.isLive("{ currentResource { path } }"));
+        assertFalse(LiveQuery.isLive("mutation @live { doIt }"));
+        assertFalse(LiveQuery.isLive("query @live { "));
+    }
+
+    @Test
+    public void testDependsOn() {
+        final Set<String> paths = new HashSet<>(Arrays.asList("/content/a", "/content/a/b/c"));
+        assertTrue(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.CHANGED, "/content/a", false)));
+        assertTrue(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.ADDED, "/content/a/x", false)));
+        assertTrue(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.REMOVED, "/content/a/b", false)));
+        assertTrue(
+                "Removing an ancestor removes the resources that were read",
+                LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.REMOVED, "/content", false)));
+        assertFalse(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.CHANGED, "/content", false)));
+        assertFalse(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.CHANGED, "/content/x/a", false)));
+        assertFalse(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.ADDED, "/content/ab", false)));
+        assertFalse(LiveQuery.dependsOn(paths, new ResourceChange(ChangeType.CHANGED, "/content/d", false)));
+    }
+}